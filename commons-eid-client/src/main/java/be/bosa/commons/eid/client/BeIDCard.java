@@ -25,6 +25,7 @@ import be.bosa.commons.eid.client.impl.CCID;
 import be.bosa.commons.eid.client.impl.LocaleManager;
 import be.bosa.commons.eid.client.impl.VoidLogger;
 import be.bosa.commons.eid.client.spi.BeIDCardUI;
+import be.bosa.commons.eid.client.spi.CertificateDecoder;
 import be.bosa.commons.eid.client.spi.Logger;
 
 import javax.smartcardio.ATR;
@@ -38,15 +39,23 @@ import java.awt.*;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * One BeIDCard instance represents one Belgian Electronic Identity Card,
@@ -101,6 +110,8 @@ public class BeIDCard implements AutoCloseable {
 	private static final byte[] BELPIC_AID = new byte[]{(byte) 0xA0, 0x00, 0x00, 0x01, 0x77, 0x50, 0x4B, 0x43, 0x53, 0x2D, 0x31, 0x35,};
 	private static final byte[] APPLET_AID = new byte[]{(byte) 0xA0, 0x00, 0x00, 0x00, 0x30, 0x29, 0x05, 0x70, 0x00, (byte) 0xAD, 0x13, 0x10, 0x01, 0x01, (byte) 0xFF,};
 	private static final int BLOCK_SIZE = 0xff;
+	private static final int EXTENDED_BLOCK_SIZE = 0x1000;
+	private static final int EXTENDED_LENGTH_APPLET_VERSION = 0x18;
 
 	private final CardChannel cardChannel;
 	private final List<BeIDCardListener> cardListeners;
@@ -109,12 +120,22 @@ public class BeIDCard implements AutoCloseable {
 	private final Card card;
 	private final CardTerminal cardTerminal;
 	private final Logger logger;
+	private final ReentrantLock exclusiveLock;
 
 	private CCID ccid;
 	private BeIDCardUI ui;
 	private Locale locale;
-
-	private Thread exclusiveAccessThread;
+	private FileCache fileCache;
+	private CertificateDecoder certificateDecoder;
+	private CertificateStore certificateStore;
+	private Set<FileType> confirmedStoreCertificates;
+	private SharingViolationStrategy sharingViolationStrategy;
+	private PinPadPollingStrategy pinPadPollingStrategy;
+	private volatile byte[] cardData;
+	private volatile String serialNumber;
+	private boolean extendedLengthEnabled;
+	private boolean readBlockSizeNegotiated;
+	private int readBlockSize;
 
 	/**
 	 * Instantiate a BeIDCard from an already connected javax.smartcardio.Card,
@@ -139,6 +160,11 @@ public class BeIDCard implements AutoCloseable {
 
 		this.cardChannel = card.getBasicChannel();
 		this.cardListeners = new LinkedList<>();
+		this.exclusiveLock = new ReentrantLock(true);
+		this.extendedLengthEnabled = true;
+		this.readBlockSize = BLOCK_SIZE;
+		this.sharingViolationStrategy = SharingViolationStrategy.fixedDelay();
+		this.pinPadPollingStrategy = PinPadPollingStrategy.fixedInterval();
 
 		try {
 			this.certificateFactory = CertificateFactory.getInstance("X.509");
@@ -162,7 +188,9 @@ public class BeIDCard implements AutoCloseable {
 
 	/**
 	 * Instantiate a BeIDCard from a javax.smartcardio.CardTerminal, with a
-	 * Logger implementation to receive logging output.
+	 * Logger implementation to receive logging output. The CCID features of
+	 * the reader are remembered by name until a BeIDCardManager sees it
+	 * detached, see {@link be.bosa.commons.eid.client.impl.CCIDCapabilityCache}.
 	 *
 	 * @param cardTerminal a javax.smartcardio.CardTerminal that you have previously
 	 *                     determined to contain a BeID Card
@@ -191,6 +219,12 @@ public class BeIDCard implements AutoCloseable {
 	public void close() {
 		logger.debug("closing eID card");
 
+		// set before any file of this card goes into the FileCache
+		String serialNumber = this.serialNumber;
+		if (fileCache != null && serialNumber != null) {
+			fileCache.invalidate(serialNumber);
+		}
+
 		try {
 			card.disconnect(true);
 		} catch (CardException e) {
@@ -214,6 +248,117 @@ public class BeIDCard implements AutoCloseable {
 		}
 	}
 
+	/**
+	 * Use a FileCache for subsequent reads of files that can't change while
+	 * the card is inserted (certificates, identity, photo..). Pass null to
+	 * stop caching. The files of this card are removed from the cache when
+	 * this BeIDCard is closed.
+	 *
+	 * @param fileCache the cache to use, or null
+	 */
+	public void setFileCache(FileCache fileCache) {
+		this.fileCache = fileCache;
+	}
+
+	/**
+	 * @return the FileCache in use, or null if reads are not cached
+	 */
+	public FileCache getFileCache() {
+		return fileCache;
+	}
+
+	/**
+	 * Decode the certificates read from the card with the given decoder,
+	 * instead of a plain X.509 CertificateFactory.
+	 *
+	 * @param certificateDecoder the decoder, or null for the default
+	 */
+	public void setCertificateDecoder(CertificateDecoder certificateDecoder) {
+		this.certificateDecoder = certificateDecoder;
+	}
+
+	public CertificateDecoder getCertificateDecoder() {
+		return certificateDecoder;
+	}
+
+	/**
+	 * Take the CA and Root certificates of certificate chains from the given
+	 * CertificateStore when it has them, and add them to it when it doesn't.
+	 * Pass null to always read them from the card.
+	 *
+	 * @param certificateStore the store to use, or null
+	 */
+	public void setCertificateStore(CertificateStore certificateStore) {
+		this.certificateStore = certificateStore;
+		this.confirmedStoreCertificates = EnumSet.noneOf(FileType.class);
+	}
+
+	/**
+	 * @return the CertificateStore in use, or null if chains are read from the card
+	 */
+	public CertificateStore getCertificateStore() {
+		return certificateStore;
+	}
+
+	/**
+	 * Set how to deal with SCARD_E_SHARING_VIOLATION errors. Defaults to
+	 * {@link SharingViolationStrategy#fixedDelay()}.
+	 *
+	 * @param sharingViolationStrategy the strategy to use
+	 */
+	public void setSharingViolationStrategy(SharingViolationStrategy sharingViolationStrategy) {
+		if (sharingViolationStrategy == null) {
+			throw new IllegalArgumentException("sharingViolationStrategy expected");
+		}
+		this.sharingViolationStrategy = sharingViolationStrategy;
+	}
+
+	public SharingViolationStrategy getSharingViolationStrategy() {
+		return sharingViolationStrategy;
+	}
+
+	/**
+	 * Set how often to poll a PIN pad reader for the OK key during PIN entry,
+	 * trading the latency after the citizen presses OK against the number of
+	 * commands sent to the reader. Defaults to
+	 * {@link PinPadPollingStrategy#fixedInterval()};
+	 * {@link PinPadPollingStrategy#adaptive()} notices the OK key sooner.
+	 *
+	 * @param pinPadPollingStrategy the strategy to use
+	 */
+	public void setPinPadPollingStrategy(PinPadPollingStrategy pinPadPollingStrategy) {
+		if (pinPadPollingStrategy == null) {
+			throw new IllegalArgumentException("pinPadPollingStrategy expected");
+		}
+		this.pinPadPollingStrategy = pinPadPollingStrategy;
+	}
+
+	public PinPadPollingStrategy getPinPadPollingStrategy() {
+		return pinPadPollingStrategy;
+	}
+
+	/**
+	 * Allow or disallow extended-length READ BINARY commands. When allowed
+	 * (the default), readFile() reads files in blocks of up to 4096 bytes
+	 * instead of 255 if the ATR or the applet version indicate that the card
+	 * supports it. If the card or the card reader refuse the first extended
+	 * read, this BeIDCard falls back to short reads for good.
+	 *
+	 * @param extendedLengthEnabled false to always use short reads
+	 */
+	public void setExtendedLengthEnabled(boolean extendedLengthEnabled) {
+		this.extendedLengthEnabled = extendedLengthEnabled;
+		this.readBlockSizeNegotiated = false;
+		this.readBlockSize = BLOCK_SIZE;
+	}
+
+	/**
+	 * @return the number of bytes currently requested per READ BINARY command
+	 */
+	public int getReadBlockSize() {
+		return readBlockSize;
+	}
+
 	/**
 	 * Register a BeIDCardListener to receive updates on any consequent file
 	 * reading/signature operations executed by this BeIDCard.
@@ -301,20 +446,70 @@ public class BeIDCard implements AutoCloseable {
 	 * Applicable FileTypes are AuthentificationCertificate,
 	 * NonRepudiationCertificate, CACertificate, and RRNCertificate.
 	 *
+	 * With a CertificateStore, only the certificate itself is read from the
+	 * card if the store has its issuers.
+	 *
 	 * @param fileType which certificate's chain to return
 	 * @return the certificate's chain up to and including the Belgian Root Cert
 	 */
 	public List<X509Certificate> getCertificateChain(FileType fileType) throws BeIDException, InterruptedException {
 		List<X509Certificate> chain = new LinkedList<>();
-		chain.add(generateCertificateOfType(fileType));
+		X509Certificate certificate = generateCertificateOfType(fileType);
+		chain.add(certificate);
 		if (fileType.chainIncludesCitizenCA()) {
-			chain.add(generateCertificateOfType(FileType.CACertificate));
+			certificate = getIssuerCertificate(certificate, FileType.CACertificate);
+			chain.add(certificate);
 		}
-		chain.add(generateCertificateOfType(FileType.RootCertificate));
+		chain.add(getIssuerCertificate(certificate, FileType.RootCertificate));
 
 		return chain;
 	}
 
+	/*
+	 * The issuer of a certificate, from the CertificateStore if there is one
+	 * and it has the issuer, otherwise read from the card.
+	 */
+	private X509Certificate getIssuerCertificate(X509Certificate certificate, FileType issuerFileType) throws BeIDException, InterruptedException {
+		CertificateStore certificateStore = this.certificateStore;
+		if (certificateStore == null) {
+			return generateCertificateOfType(issuerFileType);
+		}
+
+		X509Certificate issuerCertificate = certificateStore.getIssuer(certificate);
+		if (issuerCertificate == null) {
+			byte[] encodedCertificate = readFile(issuerFileType);
+			try {
+				return certificateStore.put(encodedCertificate);
+			} catch (CertificateException e) {
+				throw new BeIDException("Invalid certificate", e);
+			} catch (IOException e) {
+				logger.error("could not store " + issuerFileType.name() + ": " + e.getMessage());
+				return generateCertificateOfType(issuerFileType);
+			}
+		}
+
+		boolean firstUse;
+		synchronized (confirmedStoreCertificates) {
+			firstUse = confirmedStoreCertificates.add(issuerFileType);
+		}
+		if (firstUse) {
+			certificateStore.verifyLater(() -> confirmStoreCertificate(certificateStore, issuerCertificate, issuerFileType));
+		}
+		return issuerCertificate;
+	}
+
+	private void confirmStoreCertificate(CertificateStore certificateStore, X509Certificate certificate, FileType fileType) {
+		try {
+			if (!certificateStore.confirm(certificate, readFile(fileType))) {
+				logger.error(fileType.name() + " in certificate store differs from the one on the card, added the card's");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (BeIDException | IOException | RuntimeException e) {
+			logger.debug("could not confirm " + fileType.name() + " from certificate store: " + e.getMessage());
+		}
+	}
+
 	/**
 	 * Returns the X509 authentication certificate chain. (Authentication -
 	 * Citizen CA - Root) This is a convenience method for
@@ -677,37 +872,49 @@ public class BeIDCard implements AutoCloseable {
 	/**
 	 * Begin an exclusive transaction with the card. Once this returns, only the
 	 * calling thread will be able to access the card, until it calls
-	 * endExclusive(). Other threads will receive a CardException. Use this when
-	 * you need to make several calls to the card that depend on each other. for
-	 * example, SELECT FILE and READ BINARY, or SELECT ALGORITHM and COMPUTE
-	 * SIGNATURE, to avoid other threads/processes from interleaving commands
-	 * that would break your transactional logic.
+	 * endExclusive(). Other threads calling beginExclusive() wait their turn,
+	 * in the order they asked. Use this when you need to make several calls to
+	 * the card that depend on each other. for example, SELECT FILE and READ
+	 * BINARY, or SELECT ALGORITHM and COMPUTE SIGNATURE, to avoid other
+	 * threads/processes from interleaving commands that would break your
+	 * transactional logic.
+	 * <p>
+	 * Exclusive access is reentrant: a thread that already has it may call
+	 * beginExclusive() again, and must call endExclusive() as many times. Only
+	 * the outermost pair starts and ends the PC/SC transaction.
 	 * <p>
-	 * Called automatically by the higher-level methods in this class. If you
-	 * end up calling this directly, this is either something wrong with your
-	 * code, or with this class. Please let us know. You should really only have
-	 * to be calling this when using some of the other low-level methods
-	 * (transmitCommand, etc..) *never* in combination with the high-level
-	 * methods.
+	 * Called automatically by the higher-level methods in this class, so you
+	 * only need this to group several of those, or when using some of the
+	 * other low-level methods (transmitCommand, etc..).
 	 */
 	public void beginExclusive() throws BeIDException {
-		if (exclusiveAccessThread != null)
-			throw new IllegalStateException("Exclusive access already granted to " + exclusiveAccessThread.getName());
+		exclusiveLock.lock();
+		beginCardExclusive();
+	}
 
-		logger.debug("---begin exclusive---");
-		try {
-			card.beginExclusive();
-			exclusiveAccessThread = Thread.currentThread();
-		} catch (CardException e) {
-			throw new BeIDException("Cannot begin exclusive", e);
+	/**
+	 * Begin an exclusive transaction with the card, like beginExclusive(), but
+	 * waiting at most the given time for another thread to end its exclusive
+	 * transaction.
+	 *
+	 * @param timeout how long to wait
+	 * @param unit    the unit of timeout
+	 * @return true when exclusive access was granted, false on timeout
+	 */
+	public boolean beginExclusive(long timeout, TimeUnit unit) throws BeIDException, InterruptedException {
+		if (!exclusiveLock.tryLock(timeout, unit)) {
+			return false;
 		}
+
+		beginCardExclusive();
+		return true;
 	}
 
 	/**
 	 * Checks if current thread has exclusive access.
 	 */
 	public boolean hasExclusive() {
-		return exclusiveAccessThread == Thread.currentThread();
+		return exclusiveLock.isHeldByCurrentThread();
 	}
 
 	/**
@@ -715,12 +922,57 @@ public class BeIDCard implements AutoCloseable {
 	 * beginExclusive().
 	 */
 	public void endExclusive() throws BeIDException {
-		if (Thread.currentThread() != exclusiveAccessThread) return;
+		if (!exclusiveLock.isHeldByCurrentThread()) return;
+
+		try {
+			if (exclusiveLock.getHoldCount() == 1) {
+				logger.debug("---end exclusive---");
+				card.endExclusive();
+			}
+		} catch (CardException e) {
+			throw new BeIDException("Cannot end exclusive", e);
+		} finally {
+			exclusiveLock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of threads waiting in beginExclusive()
+	 */
+	public int getExclusiveQueueLength() {
+		return exclusiveLock.getQueueLength();
+	}
+
+	private void beginCardExclusive() throws BeIDException {
+		if (exclusiveLock.getHoldCount() > 1) {
+			return;
+		}
+
+		logger.debug("---begin exclusive---");
+		try {
+			card.beginExclusive();
+		} catch (CardException e) {
+			exclusiveLock.unlock();
+			throw new BeIDException("Cannot begin exclusive", e);
+		}
+	}
 
-		logger.debug("---end exclusive---");
+	/*
+	 * Temporarily end the PC/SC transaction, keeping other threads out.
+	 */
+	private void suspendCardExclusive() throws BeIDException {
+		logger.debug("---suspend exclusive---");
 		try {
-			exclusiveAccessThread = null;
 			card.endExclusive();
+		} catch (CardException e) {
+			throw new BeIDException("Cannot end exclusive", e);
+		}
+	}
+
+	private void resumeCardExclusive() throws BeIDException {
+		logger.debug("---resume exclusive---");
+		try {
+			card.beginExclusive();
 		} catch (CardException e) {
 			throw new BeIDException("Cannot begin exclusive", e);
 		}
@@ -733,25 +985,98 @@ public class BeIDCard implements AutoCloseable {
 	 *
 	 * @param fileType         the file to read (to allow for notification)
 	 * @param estimatedMaxSize the estimated total size of the file to read (to allow for
-	 *                         notification)
+	 *                         notification, and to size the buffer read into)
 	 * @return the data from the file
 	 */
 	public byte[] readBinary(FileType fileType, int estimatedMaxSize) throws BeIDException, InterruptedException {
+		byte[] data = readBinary(fileType, estimatedMaxSize, 0, estimatedMaxSize);
+		notifyReadProgress(fileType, data.length, data.length);
+		return data;
+	}
+
+	/**
+	 * Read bytes from a previously selected "File" on the card into the given
+	 * buffer, starting at its position, without allocating a new array for
+	 * the file. Lets callers reading many cards reuse one buffer; see
+	 * readBinary(FileType, int).
+	 *
+	 * @param fileType the file to read (to allow for notification)
+	 * @param buffer   the buffer to read into, its position is advanced by the
+	 *                 number of bytes read
+	 * @return the number of bytes read
+	 * @throws BufferOverflowException when the file doesn't fit in the remaining
+	 *                                 space of the buffer
+	 */
+	public int readBinary(FileType fileType, ByteBuffer buffer) throws BeIDException, InterruptedException {
+		int length = readBinary(fileType, buffer, false, 0, fileType.getEstimatedMaxSize()).position() - buffer.position();
+		buffer.position(buffer.position() + length);
+		notifyReadProgress(fileType, length, length);
+		return length;
+	}
+
+	/*
+	 * Reads into one array of about estimatedSize bytes, only growing it when
+	 * the file turns out to be larger. The estimate is rounded up to whole
+	 * short blocks, as the estimates of FileType are often a few bytes short.
+	 */
+	private byte[] readBinary(FileType fileType, int estimatedSize, int progressOffset, int progressTotal) throws BeIDException, InterruptedException {
+		int blocks = Math.max(1, (estimatedSize + BLOCK_SIZE - 1) / BLOCK_SIZE);
+		ByteBuffer buffer = ByteBuffer.allocate(blocks * BLOCK_SIZE);
+		buffer = readBinary(fileType, buffer, true, progressOffset, progressTotal);
+
+		byte[] data = buffer.array();
+		return buffer.position() == data.length ? data : Arrays.copyOf(data, buffer.position());
+	}
+
+	/*
+	 * Progress is reported as progressOffset plus the number of bytes read
+	 * so far, out of progressTotal, so that a file can be part of a larger
+	 * read (see readAll).
+	 *
+	 * Returns the buffer holding the data, which is a larger copy of the
+	 * given one when it had to grow, positioned after the data. The position
+	 * of the given buffer is left alone.
+	 */
+	private ByteBuffer readBinary(FileType fileType, ByteBuffer buffer, boolean growable, int progressOffset, int progressTotal) throws BeIDException, InterruptedException {
 		int offset = 0;
 		logger.debug("read binary");
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		buffer = buffer.duplicate();
 		byte[] data;
+		int blockSize;
 		do {
 			if (Thread.currentThread().isInterrupted()) {
 				logger.debug("interrupted in readBinary");
 				throw new InterruptedException();
 			}
 
-			notifyReadProgress(fileType, offset, estimatedMaxSize);
-			ResponseAPDU responseApdu = transmitCommand(
-					BeIDCommandAPDU.READ_BINARY, offset >> 8, offset & 0xFF,
-					BLOCK_SIZE);
-			int sw = responseApdu.getSW();
+			notifyReadProgress(fileType, progressOffset + offset, progressTotal);
+			blockSize = readBlockSize;
+			ResponseAPDU responseApdu;
+			try {
+				responseApdu = transmitCommand(
+						BeIDCommandAPDU.READ_BINARY, offset >> 8, offset & 0xFF,
+						blockSize);
+			} catch (BeIDException e) {
+				if (BLOCK_SIZE == blockSize) {
+					throw e;
+				}
+				responseApdu = null;
+			}
+
+			int sw = responseApdu == null ? 0 : responseApdu.getSW();
+			boolean wrongLength = 0x6700 == sw || 0x6C00 == (sw & 0xFF00);
+			if (BLOCK_SIZE != blockSize && (responseApdu == null || wrongLength)) {
+				/*
+				 * The card or the card reader refused the extended-length
+				 * command (wrong length, or not transmitted at all): read the
+				 * rest of this file, and any other, in short blocks.
+				 */
+				logger.debug("extended length read refused (" + Integer.toHexString(sw) + "), falling back to short reads");
+				readBlockSize = BLOCK_SIZE;
+				data = null;
+				continue;
+			}
+
 			if (0x6B00 == sw) {
 				/*
 				 * Wrong parameters (offset outside the EF) End of file reached.
@@ -760,21 +1085,34 @@ public class BeIDCard implements AutoCloseable {
 				break;
 			}
 
-			if (0x9000 != sw) {
+			if (0x9000 != sw && 0x6282 != sw) {
 				throw new BeIDException("BeIDCommandAPDU response error: " + responseApdu.getSW(), new ResponseAPDUException(responseApdu));
 			}
 
 			data = responseApdu.getData();
-			try {
-				baos.write(data);
-			} catch (IOException e) {
-				throw new RuntimeException(e); // should not happen
+			if (data.length > buffer.remaining()) {
+				if (!growable) {
+					throw new BufferOverflowException();
+				}
+				buffer = grow(buffer, data.length);
 			}
+			buffer.put(data);
 			offset += data.length;
-		} while (BLOCK_SIZE == data.length);
+			if (0x6282 == sw) {
+				// End of file reached before reading blockSize bytes
+				break;
+			}
+		} while (data == null || blockSize == data.length);
+
+		return buffer;
+	}
 
-		notifyReadProgress(fileType, offset, offset);
-		return baos.toByteArray();
+	private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+		int capacity = Math.max(buffer.capacity() * 2, buffer.position() + needed);
+		ByteBuffer grown = ByteBuffer.allocate(capacity);
+		buffer.flip();
+		grown.put(buffer);
+		return grown;
 	}
 
 	/**
@@ -790,36 +1128,220 @@ public class BeIDCard implements AutoCloseable {
 			throw new BeIDException("Wrong status word after selecting file: " + Integer.toHexString(responseApdu.getSW()));
 		}
 
-		try {
-			// SCARD_E_SHARING_VIOLATION fix
-			Thread.sleep(20);
-		} catch (InterruptedException e) {
-			throw new RuntimeException("sleep error: " + e.getMessage());
-		}
+		// SCARD_E_SHARING_VIOLATION fix
+		sharingViolationStrategy.delayAfterSelectFile(getReaderName());
 	}
 
 	/**
 	 * Reads a file and converts it to a certificagte.
 	 */
 	private X509Certificate generateCertificateOfType(FileType fileType) throws BeIDException, InterruptedException {
-		ByteArrayInputStream certificateInputStream = new ByteArrayInputStream(readFile(fileType));
+		byte[] encodedCertificate = readFile(fileType);
 		try {
-			return (X509Certificate) certificateFactory.generateCertificate(certificateInputStream);
+			if (certificateDecoder != null) {
+				return certificateDecoder.decode(encodedCertificate);
+			}
+			return (X509Certificate) certificateFactory.generateCertificate(new ByteArrayInputStream(encodedCertificate));
 		} catch (CertificateException e) {
 			throw new BeIDException("Invalid certificate", e);
 		}
 	}
 
 	/**
-	 * Reads a file from the card.
+	 * Reads a file from the card. If a FileCache was set and the file is
+	 * cacheable, it is only read from the card the first time.
 	 *
 	 * @param fileType the file to read
 	 * @return the data from the file
 	 */
 	public byte[] readFile(FileType fileType) throws BeIDException, InterruptedException {
+		if (fileCache == null || !fileType.isCacheable()) {
+			return readFileFromCard(fileType);
+		}
+
+		String cacheKey = getSerialNumber();
+		byte[] data = fileCache.get(cacheKey, fileType);
+		if (data != null) {
+			logger.debug("file " + fileType.name() + " read from cache");
+			notifyReadProgress(fileType, data.length, data.length);
+			return data;
+		}
+
+		data = readFileFromCard(fileType);
+		fileCache.put(cacheKey, fileType, data);
+		return data;
+	}
+
+	/**
+	 * Reads several files from the card in a single exclusive session. The
+	 * files of the ID directory (identity, address, photo and their
+	 * signatures) are selected before the certificates, so the card changes
+	 * directory at most once. Files that are in the FileCache are not read
+	 * again. BeIDCardListeners are notified of the progress of the whole
+	 * read, not per file.
+	 *
+	 * @param fileTypes the files to read
+	 * @return the data from the files, by FileType
+	 */
+	public Map<FileType, byte[]> readAll(Set<FileType> fileTypes) throws BeIDException, InterruptedException {
+		// FileType declares all DF01 files before the DF00 ones
+		Set<FileType> toRead = fileTypes.isEmpty() ? EnumSet.noneOf(FileType.class) : EnumSet.copyOf(fileTypes);
+		Map<FileType, byte[]> files = new EnumMap<>(FileType.class);
+		if (toRead.isEmpty()) {
+			return files;
+		}
+
+		int progressOffset = 0;
+		int progressTotal = 0;
+		for (FileType fileType : toRead) {
+			progressTotal += fileType.getEstimatedMaxSize();
+		}
+
+		beginExclusive();
+		try {
+			negotiateReadBlockSize();
+			for (FileType fileType : toRead) {
+				boolean cached = fileCache != null && fileType.isCacheable();
+				byte[] data = cached ? fileCache.get(getSerialNumber(), fileType) : null;
+				if (data == null) {
+					selectFile(fileType.getFileId());
+					data = readBinary(fileType, fileType.getEstimatedMaxSize(), progressOffset, progressTotal);
+					if (cached) {
+						fileCache.put(getSerialNumber(), fileType, data);
+					}
+				}
+
+				files.put(fileType, data);
+				progressOffset += data.length;
+				progressTotal += data.length - fileType.getEstimatedMaxSize();
+				notifyReadProgress(fileType, progressOffset, progressTotal);
+			}
+		} finally {
+			endExclusive();
+		}
+
+		return files;
+	}
+
+	/**
+	 * Returns the raw CARD DATA of the BELPIC applet (see BELPIC APPLICATION
+	 * V2.0 specs, GET CARD DATA). be.bosa.commons.eid.consumer.CardData
+	 * parses this.
+	 *
+	 * @return the card data bytes
+	 */
+	public byte[] getCardData() throws BeIDException, InterruptedException {
+		ResponseAPDU responseApdu = transmitCommand(BeIDCommandAPDU.GET_CARD_DATA, 0x1c);
+		if (0x9000 != responseApdu.getSW()) {
+			throw new ResponseAPDUException("get card data failure", responseApdu);
+		}
+
+		return responseApdu.getData();
+	}
+
+	/*
+	 * The card serial number (the first 16 bytes of the CARD DATA, which
+	 * include the chip serial number) as hexadecimal string. Read only once.
+	 */
+	private String getSerialNumber() throws BeIDException, InterruptedException {
+		String serialNumber = this.serialNumber;
+		if (serialNumber == null) {
+			byte[] cardData = getCachedCardData();
+			StringBuilder builder = new StringBuilder();
+			for (int idx = 0; idx < Math.min(16, cardData.length); idx++) {
+				builder.append(String.format("%02x", cardData[idx]));
+			}
+			serialNumber = builder.toString();
+			this.serialNumber = serialNumber;
+		}
+
+		return serialNumber;
+	}
+
+	/*
+	 * GET CARD DATA is sent in an exclusive session, so that it can't be
+	 * interleaved with another thread's SELECT FILE and READ BINARY.
+	 */
+	private byte[] getCachedCardData() throws BeIDException, InterruptedException {
+		byte[] cardData = this.cardData;
+		if (cardData == null) {
+			beginExclusive();
+			try {
+				cardData = this.cardData;
+				if (cardData == null) {
+					cardData = getCardData();
+					this.cardData = cardData;
+				}
+			} finally {
+				endExclusive();
+			}
+		}
+
+		return cardData;
+	}
+
+	/*
+	 * Decide, once, whether to read with extended-length APDUs: only when
+	 * the card says it can handle them (in the card capabilities of its ATR,
+	 * or by its applet version, v1.8 and up) and the reader is not talking
+	 * T=0, which has no room for extended lengths. A card reader that doesn't
+	 * pass them on is found out by the first read, see readBinary.
+	 */
+	private void negotiateReadBlockSize() throws InterruptedException {
+		if (readBlockSizeNegotiated) {
+			return;
+		}
+
+		readBlockSizeNegotiated = true;
+		if (!extendedLengthEnabled || "T=0".equals(card.getProtocol())) {
+			return;
+		}
+
+		boolean extendedLength = atrIndicatesExtendedLength(card.getATR().getHistoricalBytes());
+		if (!extendedLength) {
+			try {
+				byte[] cardData = getCachedCardData();
+				extendedLength = cardData.length > 21 && (cardData[21] & 0xff) >= EXTENDED_LENGTH_APPLET_VERSION;
+			} catch (BeIDException e) {
+				logger.debug("no card data, not using extended length: " + e.getMessage());
+			}
+		}
+
+		if (extendedLength) {
+			logger.debug("using extended length reads");
+			readBlockSize = EXTENDED_BLOCK_SIZE;
+		}
+	}
+
+	/*
+	 * Look for the "card capabilities" compact-TLV object (tag 7, length 3)
+	 * in the historical bytes (ISO/IEC 7816-4, 8.1.1.2.7); bit 7 of its
+	 * third software function byte signals extended Lc and Le fields.
+	 */
+	private static boolean atrIndicatesExtendedLength(byte[] historicalBytes) {
+		if (historicalBytes.length == 0 || (historicalBytes[0] != 0x00 && historicalBytes[0] != (byte) 0x80)) {
+			return false;
+		}
+
+		int idx = 1;
+		int end = historicalBytes[0] == 0x00 ? historicalBytes.length - 3 : historicalBytes.length;
+		while (idx < end) {
+			int tag = (historicalBytes[idx] >> 4) & 0x0f;
+			int length = historicalBytes[idx] & 0x0f;
+			if (tag == 0x07 && length == 3 && idx + 3 < end) {
+				return (historicalBytes[idx + 3] & 0x40) != 0;
+			}
+			idx += 1 + length;
+		}
+
+		return false;
+	}
+
+	private byte[] readFileFromCard(FileType fileType) throws BeIDException, InterruptedException {
 		beginExclusive();
 
 		try {
+			negotiateReadBlockSize();
 			selectFile(fileType.getFileId());
 			return readBinary(fileType, fileType.getEstimatedMaxSize());
 		} finally {
@@ -903,25 +1425,34 @@ public class BeIDCard implements AutoCloseable {
 	}
 
 	private ResponseAPDU transmit(CommandAPDU commandApdu) throws BeIDException, InterruptedException {
-		try {
-			ResponseAPDU responseApdu = cardChannel.transmit(commandApdu);
-			if (0x6c == responseApdu.getSW1()) {
-				/*
-				 * A minimum delay of 10 msec between the answer ?????????6C
-				 * xx????????? and the next BeIDCommandAPDU is mandatory for eID
-				 * v1.0 and v1.1 cards.
-				 */
-				logger.debug("sleeping...");
-				Thread.sleep(10);
-				responseApdu = cardChannel.transmit(commandApdu);
-			}
+		for (int attempt = 1; ; attempt++) {
+			try {
+				ResponseAPDU responseApdu = cardChannel.transmit(commandApdu);
+				if (0x6c == responseApdu.getSW1()) {
+					/*
+					 * A minimum delay of 10 msec between the answer ?????????6C
+					 * xx????????? and the next BeIDCommandAPDU is mandatory for eID
+					 * v1.0 and v1.1 cards.
+					 */
+					logger.debug("sleeping...");
+					Thread.sleep(10);
+					responseApdu = cardChannel.transmit(commandApdu);
+				}
 
-			return responseApdu;
-		} catch (CardException e) {
-			throw new BeIDException("Cannot transmit data", e);
+				return responseApdu;
+			} catch (CardException e) {
+				if (!sharingViolationStrategy.retry(getReaderName(), attempt, e)) {
+					throw new BeIDException("Cannot transmit data", e);
+				}
+				logger.debug("sharing violation, retrying");
+			}
 		}
 	}
 
+	private String getReaderName() {
+		return cardTerminal == null ? "" : cardTerminal.getName();
+	}
+
 	private void notifyReadProgress(FileType fileType, int offset, int estimatedMaxOffset) {
 		if (offset > estimatedMaxOffset) {
 			estimatedMaxOffset = offset;
@@ -1036,7 +1567,7 @@ public class BeIDCard implements AutoCloseable {
 
 		try {
 			transmitCCIDControl(getCCID().usesPPDU(), CCID.FEATURE.VERIFY_PIN_START, getCCID().createPINVerificationDataStructure(getLocale(), CCID.INS.VERIFY_PIN));
-			getCCID().waitForOK();
+			getCCID().waitForOK(pinPadPollingStrategy);
 		} catch (IOException e) {
 			throw new BeIDException("Cannot verify pin", e);
 		} finally {
@@ -1055,13 +1586,17 @@ public class BeIDCard implements AutoCloseable {
 	 * Verify PIN code by obtaining it from the current UI
 	 */
 	private ResponseAPDU verifyPINViaUI(int retriesLeft, PINPurpose purpose) throws CancelledException, BeIDException, InterruptedException {
-		boolean windows8 = isWindows8Or10();
+		boolean windows8 = isWindows8Or10() && hasExclusive();
 		if (windows8) {
-			endExclusive();
+			suspendCardExclusive();
 		}
-		char[] pin = getUI().obtainPIN(retriesLeft, purpose);
-		if (windows8) {
-			beginExclusive();
+		char[] pin;
+		try {
+			pin = getUI().obtainPIN(retriesLeft, purpose);
+		} finally {
+			if (windows8) {
+				resumeCardExclusive();
+			}
 		}
 
 		byte[] verifyData = new byte[]{(byte) (0x20 | pin.length), (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF};
@@ -1130,17 +1665,17 @@ public class BeIDCard implements AutoCloseable {
 
 			logger.debug("enter old PIN...");
 			getUI().advisePINPadOldPINEntry(retriesLeft);
-			getCCID().waitForOK();
+			getCCID().waitForOK(pinPadPollingStrategy);
 			getUI().advisePINPadOperationEnd();
 
 			logger.debug("enter new PIN...");
 			getUI().advisePINPadNewPINEntry(retriesLeft);
-			getCCID().waitForOK();
+			getCCID().waitForOK(pinPadPollingStrategy);
 			getUI().advisePINPadOperationEnd();
 
 			logger.debug("enter new PIN again...");
 			getUI().advisePINPadNewPINEntryAgain(retriesLeft);
-			getCCID().waitForOK();
+			getCCID().waitForOK(pinPadPollingStrategy);
 		} catch (IOException e) {
 			throw new BeIDException("Error changing pin", e);
 		} finally {
@@ -20,8 +20,11 @@ package be.bosa.commons.eid.client;
 import be.bosa.commons.eid.client.CardAndTerminalManager.Protocol;
 import be.bosa.commons.eid.client.event.BeIDCardEventsListener;
 import be.bosa.commons.eid.client.event.CardEventsListener;
+import be.bosa.commons.eid.client.event.CardTerminalEventsAdapter;
+import be.bosa.commons.eid.client.impl.CCIDCapabilityCache;
 import be.bosa.commons.eid.client.impl.LocaleManager;
 import be.bosa.commons.eid.client.impl.VoidLogger;
+import be.bosa.commons.eid.client.spi.CertificateDecoder;
 import be.bosa.commons.eid.client.spi.Logger;
 
 import javax.smartcardio.ATR;
@@ -30,10 +33,11 @@ import javax.smartcardio.CardTerminal;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
 
 /**
  * A BeIDCardManager uses a {@link CardAndTerminalManager} to detect Card
@@ -65,6 +69,11 @@ public class BeIDCardManager {
 	private final Logger logger;
 
 	private boolean terminalManagerIsPrivate;
+	private FileCache fileCache;
+	private CertificateDecoder certificateDecoder;
+	private CertificateStore certificateStore;
+	private SharingViolationStrategy sharingViolationStrategy;
+	private PinPadPollingStrategy pinPadPollingStrategy;
 
 	/**
 	 * Instantiate a BeIDCardManager with a default (void) logger and a private
@@ -111,12 +120,19 @@ public class BeIDCardManager {
 	 */
 	public BeIDCardManager(Logger logger, CardAndTerminalManager cardAndTerminalManager) {
 		this.logger = logger;
-		this.beIdListeners = Collections.synchronizedSet(new HashSet<>());
-		this.otherCardListeners = Collections.synchronizedSet(new HashSet<>());
+		this.beIdListeners = new CopyOnWriteArraySet<>();
+		this.otherCardListeners = new CopyOnWriteArraySet<>();
 		this.terminalsAndCards = Collections.synchronizedMap(new HashMap<>());
 		this.cardAndTerminalManager = cardAndTerminalManager;
 
 		this.cardAndTerminalManager.addCardListener(new DefaultCardEventsListener());
+		this.cardAndTerminalManager.addCardTerminalListener(new CardTerminalEventsAdapter() {
+			@Override
+			public void terminalDetached(CardTerminal cardTerminal) {
+				// another reader may be attached under the same name
+				CCIDCapabilityCache.getInstance().invalidate(cardTerminal.getName());
+			}
+		});
 	}
 
 	/**
@@ -225,6 +241,111 @@ public class BeIDCardManager {
 		return Arrays.equals(atrBytes, ATR_PATTERN);
 	}
 
+	/**
+	 * Have the BeIDCard instances created for subsequently inserted cards
+	 * cache their immutable files in the given FileCache. A card's files are
+	 * dropped from the cache when it is removed.
+	 *
+	 * @param fileCache the FileCache to share between cards, or null to stop caching
+	 * @return this BeIDCardManager to allow for method chaining
+	 */
+	public BeIDCardManager setFileCache(FileCache fileCache) {
+		this.fileCache = fileCache;
+		return this;
+	}
+
+	public FileCache getFileCache() {
+		return fileCache;
+	}
+
+	/**
+	 * Have the BeIDCard instances created for subsequently inserted cards
+	 * decode their certificates with the given decoder, a shared certificate
+	 * cache for example.
+	 *
+	 * @param certificateDecoder the decoder, or null for the BeIDCard default
+	 * @return this BeIDCardManager to allow for method chaining
+	 */
+	public BeIDCardManager setCertificateDecoder(CertificateDecoder certificateDecoder) {
+		this.certificateDecoder = certificateDecoder;
+		return this;
+	}
+
+	public CertificateDecoder getCertificateDecoder() {
+		return certificateDecoder;
+	}
+
+	/**
+	 * Have the BeIDCard instances created for subsequently inserted cards
+	 * take the CA and Root certificates of their certificate chains from the
+	 * given CertificateStore.
+	 *
+	 * @param certificateStore the store to share between cards, or null to read chains from the cards
+	 * @return this BeIDCardManager to allow for method chaining
+	 */
+	public BeIDCardManager setCertificateStore(CertificateStore certificateStore) {
+		this.certificateStore = certificateStore;
+		return this;
+	}
+
+	public CertificateStore getCertificateStore() {
+		return certificateStore;
+	}
+
+	/**
+	 * Have the BeIDCard instances created for subsequently inserted cards
+	 * deal with SCARD_E_SHARING_VIOLATION errors using the given strategy,
+	 * shared between all of them so that it remembers which card readers need
+	 * a delay.
+	 *
+	 * @param sharingViolationStrategy the strategy, or null for the BeIDCard default
+	 * @return this BeIDCardManager to allow for method chaining
+	 */
+	public BeIDCardManager setSharingViolationStrategy(SharingViolationStrategy sharingViolationStrategy) {
+		this.sharingViolationStrategy = sharingViolationStrategy;
+		return this;
+	}
+
+	public SharingViolationStrategy getSharingViolationStrategy() {
+		return sharingViolationStrategy;
+	}
+
+	/**
+	 * Have the BeIDCard instances created for subsequently inserted cards
+	 * poll PIN pad readers using the given strategy, shared between all of
+	 * them so that it records the added latency of every card reader.
+	 *
+	 * @param pinPadPollingStrategy the strategy, or null for the BeIDCard default
+	 * @return this BeIDCardManager to allow for method chaining
+	 */
+	public BeIDCardManager setPinPadPollingStrategy(PinPadPollingStrategy pinPadPollingStrategy) {
+		this.pinPadPollingStrategy = pinPadPollingStrategy;
+		return this;
+	}
+
+	public PinPadPollingStrategy getPinPadPollingStrategy() {
+		return pinPadPollingStrategy;
+	}
+
+	/**
+	 * Have the listeners of this BeIDCardManager called on the given Executor,
+	 * in order per card terminal but concurrently across card terminals. This
+	 * sets the Executor of the CardAndTerminalManager in use, see
+	 * {@link CardAndTerminalManager#setExecutor(Executor)}.
+	 *
+	 * @param executor the Executor to call listeners on, or null to call them on
+	 *                 the CardAndTerminalManager's worker thread
+	 * @return this BeIDCardManager to allow for method chaining
+	 */
+	public BeIDCardManager setExecutor(Executor executor) {
+		cardAndTerminalManager.setExecutor(executor);
+		return this;
+	}
+
+	public Executor getExecutor() {
+		return cardAndTerminalManager.getExecutor();
+	}
+
 	public BeIDCardManager setLocale(Locale newLocale) {
 		LocaleManager.setLocale(newLocale);
 		return this;
@@ -240,9 +361,18 @@ public class BeIDCardManager {
 			if (card != null && matchesEidAtr(card.getATR())) {
 				BeIDCard beIDCard = new BeIDCard(cardTerminal, card, logger);
 				beIDCard.setLocale(LocaleManager.getLocale());
+				beIDCard.setFileCache(fileCache);
+				beIDCard.setCertificateDecoder(certificateDecoder);
+				beIDCard.setCertificateStore(certificateStore);
+				if (sharingViolationStrategy != null) {
+					beIDCard.setSharingViolationStrategy(sharingViolationStrategy);
+				}
+				if (pinPadPollingStrategy != null) {
+					beIDCard.setPinPadPollingStrategy(pinPadPollingStrategy);
+				}
 				terminalsAndCards.put(cardTerminal, beIDCard);
 
-				for (BeIDCardEventsListener listener : copyOf(beIdListeners)) {
+				for (BeIDCardEventsListener listener : beIdListeners) {
 					try {
 						listener.eIDCardInserted(cardTerminal, beIDCard);
 					} catch (Throwable thrownInListener) {
@@ -250,7 +380,7 @@ public class BeIDCardManager {
 					}
 				}
 			} else {
-				for (CardEventsListener listener : copyOf(otherCardListeners)) {
+				for (CardEventsListener listener : otherCardListeners) {
 					try {
 						listener.cardInserted(cardTerminal, card);
 					} catch (Throwable thrownInListener) {
@@ -267,7 +397,7 @@ public class BeIDCardManager {
 				beIDCard.close();
 				terminalsAndCards.remove(cardTerminal);
 
-				for (BeIDCardEventsListener listener : copyOf(beIdListeners)) {
+				for (BeIDCardEventsListener listener : beIdListeners) {
 					try {
 						listener.eIDCardRemoved(cardTerminal, beIDCard);
 					} catch (Throwable thrownInListener) {
@@ -275,7 +405,7 @@ public class BeIDCardManager {
 					}
 				}
 			} else {
-				for (CardEventsListener listener : copyOf(otherCardListeners)) {
+				for (CardEventsListener listener : otherCardListeners) {
 					try {
 						listener.cardRemoved(cardTerminal);
 					} catch (Throwable thrownInListener) {
@@ -287,7 +417,7 @@ public class BeIDCardManager {
 
 		@Override
 		public void cardEventsInitialized() {
-			for (BeIDCardEventsListener listener : copyOf(beIdListeners)) {
+			for (BeIDCardEventsListener listener : beIdListeners) {
 				try {
 					listener.eIDCardEventsInitialized();
 				} catch (Throwable thrownInListener) {
@@ -295,7 +425,7 @@ public class BeIDCardManager {
 				}
 			}
 
-			for (CardEventsListener listener : copyOf(otherCardListeners)) {
+			for (CardEventsListener listener : otherCardListeners) {
 				try {
 					listener.cardEventsInitialized();
 				} catch (Throwable thrownInListener) {
@@ -303,12 +433,5 @@ public class BeIDCardManager {
 				}
 			}
 		}
-
-		@SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
-		private <T> Set<T> copyOf(Set<T> set) {
-			synchronized (set) {
-				return new HashSet<>(set);
-			}
-		}
 	}
 }
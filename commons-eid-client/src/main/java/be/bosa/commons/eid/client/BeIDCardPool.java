@@ -0,0 +1,367 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.client;
+
+import be.bosa.commons.eid.client.event.BeIDCardEventsListener;
+import be.bosa.commons.eid.client.exception.BeIDException;
+import be.bosa.commons.eid.client.impl.VoidLogger;
+import be.bosa.commons.eid.client.spi.Logger;
+
+import javax.smartcardio.CardTerminal;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A BeIDCardPool hands out the BeID cards present in any of the attached
+ * card readers to worker threads, for server-side use of several cards at
+ * once (a signing service with a rack of readers, for example), where
+ * {@link BeIDCards} is meant for a single desktop user.
+ * <p>
+ * A card is leased to one thread at a time: {@link #borrow(long, TimeUnit)}
+ * waits until a card is available, {@link #release(BeIDCard)} gives it back.
+ * Cards are added to the pool when inserted and dropped from it when removed,
+ * also when they are leased at that time. A card is never handed to two
+ * threads at once, so the exclusive sessions a BeIDCard takes for each of its
+ * operations are never interleaved with those of another worker.
+ * <p>
+ * Other PC/SC clients may still use a card between the operations of one
+ * lease. {@link #borrowExclusive(long, TimeUnit)} also keeps the card's
+ * exclusive session for the whole lease; such a card must be released by the
+ * thread that borrowed it.
+ * <p>
+ * Once closed, a pool hands out no more cards; releasing a card only ends
+ * its exclusive session, if any.
+ */
+public class BeIDCardPool implements AutoCloseable {
+
+	private final Logger logger;
+	private final BeIDCardManager cardManager;
+	private final boolean cardManagerIsPrivate;
+	private final ReentrantLock lock;
+	private final Condition cardAvailable;
+	private final Deque<BeIDCard> availableCards;
+	private final Set<BeIDCard> leasedCards;
+	private final Set<BeIDCard> exclusiveCards;
+	private final BeIDCardEventsListener cardEventsListener;
+
+	private boolean closed;
+	private int waiting;
+	private long borrowCount;
+	private long totalWaitNanos;
+
+	/**
+	 * A BeIDCardPool without logging, with its own BeIDCardManager.
+	 */
+	public BeIDCardPool() {
+		this(new VoidLogger());
+	}
+
+	/**
+	 * A BeIDCardPool logging to logger, with its own BeIDCardManager that is
+	 * started now and stopped by {@link #close()}.
+	 *
+	 * @param logger the logger instance
+	 */
+	public BeIDCardPool(Logger logger) {
+		this(logger, new BeIDCardManager(logger), true);
+		this.cardManager.start();
+	}
+
+	/**
+	 * A BeIDCardPool for the BeID cards reported by the given BeIDCardManager.
+	 * The caller is responsible for starting and stopping it.
+	 *
+	 * @param logger      the logger instance
+	 * @param cardManager the BeIDCardManager to take the cards from
+	 */
+	public BeIDCardPool(Logger logger, BeIDCardManager cardManager) {
+		this(logger, cardManager, false);
+	}
+
+	private BeIDCardPool(Logger logger, BeIDCardManager cardManager, boolean cardManagerIsPrivate) {
+		this.logger = logger;
+		this.cardManager = cardManager;
+		this.cardManagerIsPrivate = cardManagerIsPrivate;
+		this.lock = new ReentrantLock();
+		this.cardAvailable = lock.newCondition();
+		this.availableCards = new ArrayDeque<>();
+		this.leasedCards = new HashSet<>();
+		this.exclusiveCards = new HashSet<>();
+		this.cardEventsListener = new DefaultBeIDCardEventsListener();
+
+		this.cardManager.addBeIDCardEventListener(cardEventsListener);
+	}
+
+	/**
+	 * Lease a card, waiting as long as it takes for one to become available.
+	 *
+	 * @return a BeIDCard that no other thread will get until it is released
+	 */
+	public BeIDCard borrow() throws InterruptedException {
+		return borrow(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Lease a card, waiting at most the given time for one to become
+	 * available.
+	 *
+	 * @param timeout how long to wait
+	 * @param unit    the unit of timeout
+	 * @return a BeIDCard that no other thread will get until it is released,
+	 * or null if none became available in time
+	 * @throws IllegalStateException when the pool is closed, also while waiting
+	 */
+	public BeIDCard borrow(long timeout, TimeUnit unit) throws InterruptedException {
+		long start = System.nanoTime();
+		long nanos = unit.toNanos(timeout);
+
+		lock.lockInterruptibly();
+		try {
+			waiting++;
+			try {
+				while (availableCards.isEmpty()) {
+					checkNotClosed();
+					if (nanos <= 0) {
+						return null;
+					}
+					nanos = cardAvailable.awaitNanos(nanos);
+				}
+			} finally {
+				waiting--;
+			}
+
+			checkNotClosed();
+			BeIDCard card = availableCards.removeFirst();
+			leasedCards.add(card);
+			borrowCount++;
+			totalWaitNanos += System.nanoTime() - start;
+			return card;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Lease a card like {@link #borrow(long, TimeUnit)}, and begin an exclusive
+	 * session with it that lasts until it is released, so no other PC/SC
+	 * client can use the card in between. Must be released by the calling
+	 * thread.
+	 *
+	 * @param timeout how long to wait
+	 * @param unit    the unit of timeout
+	 * @return a BeIDCard that no other thread or PC/SC client will get until it
+	 * is released, or null if none became available in time
+	 */
+	public BeIDCard borrowExclusive(long timeout, TimeUnit unit) throws BeIDException, InterruptedException {
+		BeIDCard card = borrow(timeout, unit);
+		if (card == null) {
+			return null;
+		}
+
+		try {
+			card.beginExclusive();
+		} catch (BeIDException e) {
+			release(card);
+			throw e;
+		}
+
+		lock.lock();
+		try {
+			exclusiveCards.add(card);
+		} finally {
+			lock.unlock();
+		}
+		return card;
+	}
+
+	/**
+	 * Give back a card obtained from borrow() or borrowExclusive(). Releasing a
+	 * card that was removed meanwhile has no effect.
+	 *
+	 * @param card the card to release
+	 * @throws IllegalArgumentException when the card is in this pool, but not leased
+	 * @throws IllegalStateException    when the card was borrowed with
+	 *                                  borrowExclusive() by another thread
+	 */
+	public void release(BeIDCard card) {
+		boolean exclusive;
+		lock.lock();
+		try {
+			if (closed) {
+				// the pool forgot its leases, but not the calling thread its exclusive session
+				exclusive = card.hasExclusive();
+			} else {
+				// the exclusive session can only be ended by its own thread, so don't give the card back without that
+				if (exclusiveCards.contains(card) && !card.hasExclusive()) {
+					throw new IllegalStateException("BeIDCard was borrowed exclusively by another thread");
+				}
+				exclusive = exclusiveCards.remove(card);
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (exclusive) {
+			try {
+				card.endExclusive();
+			} catch (BeIDException e) {
+				logger.debug("could not end exclusive session of released card: " + e.getMessage());
+			}
+		}
+
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			if (leasedCards.remove(card)) {
+				availableCards.addLast(card);
+				cardAvailable.signal();
+			} else if (availableCards.contains(card)) {
+				throw new IllegalArgumentException("BeIDCard was not leased");
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of cards waiting to be borrowed
+	 */
+	public int getAvailableCount() {
+		lock.lock();
+		try {
+			return availableCards.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of cards currently leased
+	 */
+	public int getLeasedCount() {
+		lock.lock();
+		try {
+			return leasedCards.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of threads currently waiting for a card
+	 */
+	public int getWaitingCount() {
+		lock.lock();
+		try {
+			return waiting;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of successful borrows so far
+	 */
+	public long getBorrowCount() {
+		lock.lock();
+		try {
+			return borrowCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param unit the unit to return the time in
+	 * @return the total time successful borrows spent waiting for a card
+	 */
+	public long getTotalWaitTime(TimeUnit unit) {
+		lock.lock();
+		try {
+			return unit.convert(totalWaitNanos, TimeUnit.NANOSECONDS);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops taking cards from the BeIDCardManager, and stops it if this pool
+	 * created it. Threads waiting in borrow() get an IllegalStateException.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		cardManager.removeBeIDCardListener(cardEventsListener);
+		lock.lock();
+		try {
+			closed = true;
+			availableCards.clear();
+			leasedCards.clear();
+			exclusiveCards.clear();
+			cardAvailable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+
+		if (cardManagerIsPrivate) {
+			cardManager.stop();
+		}
+	}
+
+	private void checkNotClosed() {
+		if (closed) {
+			throw new IllegalStateException("BeIDCardPool is closed");
+		}
+	}
+
+	private class DefaultBeIDCardEventsListener implements BeIDCardEventsListener {
+		@Override
+		public void eIDCardEventsInitialized() {
+		}
+
+		@Override
+		public void eIDCardInserted(CardTerminal cardTerminal, BeIDCard card) {
+			logger.debug("pooling eID card in [" + cardTerminal.getName() + "]");
+			lock.lock();
+			try {
+				availableCards.addLast(card);
+				cardAvailable.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		@Override
+		public void eIDCardRemoved(CardTerminal cardTerminal, BeIDCard card) {
+			logger.debug("eID card removed from pool [" + cardTerminal.getName() + "]");
+			lock.lock();
+			try {
+				availableCards.remove(card);
+				leasedCards.remove(card);
+				exclusiveCards.remove(card);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
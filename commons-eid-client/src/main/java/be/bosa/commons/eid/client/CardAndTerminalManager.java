@@ -20,6 +20,7 @@ package be.bosa.commons.eid.client;
 import be.bosa.commons.eid.client.event.CardEventsListener;
 import be.bosa.commons.eid.client.event.CardTerminalEventsListener;
 import be.bosa.commons.eid.client.impl.CardTerminalsProxy;
+import be.bosa.commons.eid.client.impl.KeyedSerialExecutor;
 import be.bosa.commons.eid.client.impl.LibJ2PCSCGNULinuxFix;
 import be.bosa.commons.eid.client.impl.VoidLogger;
 import be.bosa.commons.eid.client.spi.Logger;
@@ -29,9 +30,10 @@ import javax.smartcardio.CardException;
 import javax.smartcardio.CardTerminal;
 import javax.smartcardio.CardTerminals;
 import javax.smartcardio.CardTerminals.State;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
 
 /**
  * A CardAndTerminalManager maintains an active state overview of all
@@ -51,6 +53,7 @@ import java.util.Set;
 public class CardAndTerminalManager implements Runnable {
 
 	private static final int DEFAULT_DELAY = 250;
+	private static final int DEFAULT_TERMINAL_POLL_DELAY = 2000;
 
 	private boolean running, subSystemInitialized, autoconnect;
 	private Thread worker;
@@ -59,9 +62,12 @@ public class CardAndTerminalManager implements Runnable {
 	private final Set<String> terminalsToIgnoreCardEventsFor;
 	private final Set<CardTerminalEventsListener> cardTerminalEventsListeners;
 	private final Set<CardEventsListener> cardEventsListeners;
-	private int delay;
+	private final KeyedSerialExecutor<CardTerminal> dispatcher;
+	private int delay, terminalPollDelay;
+	private long nextTerminalPoll;
 	private final Logger logger;
 	private Protocol protocol;
+	private DetectionMode detectionMode;
 
 	public enum Protocol {
 		T0("T=0"), T1("T=1"), TCL("T=CL"), ANY("*");
@@ -77,6 +83,22 @@ public class CardAndTerminalManager implements Runnable {
 		}
 	}
 
+	/**
+	 * How card insertions and removals are detected:
+	 * <ul>
+	 * <li>POLLING: every {@link #getDelay() delay} ms, list all terminals and
+	 * ask each of them whether a card is present. Robust, but causes constant
+	 * PCSC traffic, and up to delay ms latency.
+	 * <li>EVENT_DRIVEN: block in CardTerminals.waitForChange until PCSC reports
+	 * a card insertion or removal, and only list all terminals every
+	 * {@link #getTerminalPollDelay() terminal poll delay} ms, to catch the
+	 * terminal attaches and detaches that waitForChange may miss.
+	 * </ul>
+	 */
+	public enum DetectionMode {
+		POLLING, EVENT_DRIVEN
+	}
+
 	/**
 	 * Instantiate a CardAndTerminalManager working on the standard smartcardio
 	 * CardTerminals, and without any logging.
@@ -122,10 +144,13 @@ public class CardAndTerminalManager implements Runnable {
 		// work around implementation bug in some GNU/Linux JRE's that causes libpcsc not to be found.
 		LibJ2PCSCGNULinuxFix.fixNativeLibrary(logger);
 
-		this.cardTerminalEventsListeners = Collections.synchronizedSet(new HashSet<>());
-		this.cardEventsListeners = Collections.synchronizedSet(new HashSet<>());
-		this.terminalsToIgnoreCardEventsFor = Collections.synchronizedSet(new HashSet<>());
+		this.cardTerminalEventsListeners = new CopyOnWriteArraySet<>();
+		this.cardEventsListeners = new CopyOnWriteArraySet<>();
+		this.terminalsToIgnoreCardEventsFor = new CopyOnWriteArraySet<>();
+		this.dispatcher = new KeyedSerialExecutor<>();
 		this.delay = DEFAULT_DELAY;
+		this.terminalPollDelay = DEFAULT_TERMINAL_POLL_DELAY;
+		this.detectionMode = DetectionMode.POLLING;
 		this.logger = logger;
 		this.running = false;
 		this.subSystemInitialized = false;
@@ -248,6 +273,7 @@ public class CardAndTerminalManager implements Runnable {
 		running = false;
 		worker.interrupt();
 		worker.join();
+		dispatcher.awaitIdle();
 		return this;
 	}
 
@@ -275,6 +301,79 @@ public class CardAndTerminalManager implements Runnable {
 		return this;
 	}
 
+	/**
+	 * Returns the Executor listeners are called on
+	 *
+	 * @return the Executor in use, or null if listeners are called on the
+	 * worker thread
+	 */
+	public Executor getExecutor() {
+		return dispatcher.getExecutor();
+	}
+
+	/**
+	 * Set an Executor to call the listeners on, and to connect to inserted
+	 * cards from. Events for one CardTerminal are still delivered one after
+	 * the other, in the order attach, insert, remove, detach, but events for
+	 * different CardTerminals may be delivered concurrently, so a slow
+	 * listener no longer holds up the events of other terminals. The
+	 * initialized events are sent once all events for the initial state have
+	 * been delivered. The default is null: all listeners are called on the
+	 * worker thread. Set this before calling start().
+	 *
+	 * @param executor the Executor to call listeners on, or null
+	 * @return this CardAndTerminalManager to allow for method chaining.
+	 */
+	public CardAndTerminalManager setExecutor(Executor executor) {
+		dispatcher.setExecutor(executor);
+		return this;
+	}
+
+	/**
+	 * Returns how card insertions and removals are detected
+	 *
+	 * @return the detection mode currently in use
+	 */
+	public DetectionMode getDetectionMode() {
+		return detectionMode;
+	}
+
+	/**
+	 * Set how card insertions and removals are detected. The default is
+	 * DetectionMode.POLLING. Set this before calling start().
+	 *
+	 * @param newDetectionMode the detection mode to use
+	 * @return this CardAndTerminalManager to allow for method chaining.
+	 */
+	public CardAndTerminalManager setDetectionMode(DetectionMode newDetectionMode) {
+		detectionMode = newDetectionMode;
+		return this;
+	}
+
+	/**
+	 * Returns the interval at which terminals are listed in
+	 * DetectionMode.EVENT_DRIVEN
+	 *
+	 * @return the terminal poll delay currently in use
+	 */
+	public int getTerminalPollDelay() {
+		return terminalPollDelay;
+	}
+
+	/**
+	 * Set the interval at which a CardAndTerminalManager in
+	 * DetectionMode.EVENT_DRIVEN lists the terminals to detect attaches and
+	 * detaches. Card insertions and removals are not affected by this. The
+	 * default is 2000 ms.
+	 *
+	 * @param newTerminalPollDelay the new terminal poll delay
+	 * @return this CardAndTerminalManager to allow for method chaining.
+	 */
+	public CardAndTerminalManager setTerminalPollDelay(int newTerminalPollDelay) {
+		terminalPollDelay = newTerminalPollDelay;
+		return this;
+	}
+
 	/**
 	 * Return whether this CardAndTerminalsManager will automatically connect()
 	 * to any cards inserted.
@@ -355,6 +454,11 @@ public class CardAndTerminalManager implements Runnable {
 			logger.debug("subsystem not initialized");
 			try {
 				if (terminalsPresent == null || terminalsWithCards == null) {
+					if (detectionMode == DetectionMode.EVENT_DRIVEN) {
+						// have PCSC take its reference state before we take ours, so no change falls in between
+						cardTerminals.waitForChange(1);
+						nextTerminalPoll = System.currentTimeMillis() + terminalPollDelay;
+					}
 					terminalsPresent = new HashSet<>(cardTerminals.list(State.ALL));
 					terminalsWithCards = terminalsWithCardsIn(terminalsPresent);
 				}
@@ -366,9 +470,22 @@ public class CardAndTerminalManager implements Runnable {
 				clear();
 				sleepForDelay();
 				return;
+			} catch (IllegalStateException ise) {
+				logger.debug("Cannot wait for card terminal changes (no PCSC subsystem?): " + ise.getLocalizedMessage());
+				clear();
+				sleepForDelay();
+				return;
 			}
 		}
 
+		if (detectionMode == DetectionMode.EVENT_DRIVEN) {
+			waitForPCSCEvents();
+		} else {
+			pollForPCSCEvents();
+		}
+	}
+
+	private void pollForPCSCEvents() throws InterruptedException {
 		try {
 			// can't use waitForChange properly, that is in blocking mode, without delay argument, since it sometimes
 			// misses reader attach events.. (TODO: test on other platforms) this limits us to what is basically a
@@ -427,8 +544,86 @@ public class CardAndTerminalManager implements Runnable {
 		}
 	}
 
+	private void waitForPCSCEvents() throws InterruptedException {
+		try {
+			long untilTerminalPoll = nextTerminalPoll - System.currentTimeMillis();
+			boolean changed = untilTerminalPoll > 0 && cardTerminals.waitForChange(untilTerminalPoll);
+
+			Set<CardTerminal> terminalsAttached = new HashSet<>();
+			Set<CardTerminal> terminalsWithCardsInserted = new HashSet<>();
+			Set<CardTerminal> terminalsWithCardsRemoved = new HashSet<>();
+			Set<CardTerminal> terminalsDetached = new HashSet<>();
+			boolean pollTerminals = !changed || System.currentTimeMillis() >= nextTerminalPoll;
+
+			if (changed) {
+				// only ask PCSC for the terminals that changed, never query each terminal
+				Set<CardTerminal> terminalsChanged = new HashSet<>(cardTerminals.list(State.CARD_INSERTION));
+				terminalsChanged.addAll(cardTerminals.list(State.CARD_REMOVAL));
+				for (CardTerminal terminal : terminalsChanged) {
+					if (areCardEventsIgnoredFor(terminal)) {
+						continue;
+					}
+
+					// a terminal can be in both lists when its card was swapped, or put in and taken out again,
+					// between two waits, so go by what it holds now
+					if (terminalsWithCards.contains(terminal)) {
+						terminalsWithCardsRemoved.add(terminal);
+					}
+					if (isCardPresent(terminal)) {
+						terminalsWithCardsInserted.add(terminal);
+						// a card in a terminal we don't know yet: report the attach first
+						pollTerminals |= !terminalsPresent.contains(terminal);
+					}
+				}
+			}
+
+			if (pollTerminals) {
+				Set<CardTerminal> currentTerminals = new HashSet<>(cardTerminals.list(State.ALL));
+
+				terminalsAttached.addAll(currentTerminals);
+				terminalsAttached.removeAll(terminalsPresent);
+
+				terminalsDetached.addAll(terminalsPresent);
+				terminalsDetached.removeAll(currentTerminals);
+
+				// only terminals we haven't seen before need to be asked about their card
+				terminalsWithCardsInserted.addAll(terminalsWithCardsIn(terminalsAttached));
+				terminalsWithCardsInserted.retainAll(currentTerminals);
+				for (CardTerminal terminal : terminalsDetached) {
+					if (terminalsWithCards.contains(terminal)) {
+						terminalsWithCardsRemoved.add(terminal);
+					}
+				}
+
+				terminalsPresent = currentTerminals;
+				nextTerminalPoll = System.currentTimeMillis() + terminalPollDelay;
+			}
+
+			terminalsWithCards = new HashSet<>(terminalsWithCards);
+			terminalsWithCards.removeAll(terminalsWithCardsRemoved);
+			terminalsWithCards.addAll(terminalsWithCardsInserted);
+
+			// a swapped card is removed before its successor is inserted
+			Set<CardTerminal> terminalsWithCardsSwapped = new HashSet<>(terminalsWithCardsInserted);
+			terminalsWithCardsSwapped.retainAll(terminalsWithCardsRemoved);
+			terminalsWithCardsRemoved.removeAll(terminalsWithCardsSwapped);
+			listenersTerminalsWithCardsRemoved(terminalsWithCardsSwapped);
+
+			// advise the listeners where appropriate, always in the order attach, insert, remove, detach
+			listenersUpdateInSequence(terminalsAttached, terminalsWithCardsInserted, terminalsWithCardsRemoved, terminalsDetached);
+		} catch (CardException cex) {
+			logCardException(cex, "Cannot wait for card events [3] (No Card Readers Connected?)");
+			clear();
+			sleepForDelay();
+		} catch (IllegalStateException ise) {
+			logger.debug("Cannot wait for card events (no PCSC subsystem?): " + ise.getLocalizedMessage());
+			clear();
+			sleepForDelay();
+		}
+	}
+
 	private boolean areCardEventsIgnoredFor(CardTerminal cardTerminal) {
-		for (String prefixToMatch : copyOf(terminalsToIgnoreCardEventsFor)) {
+		for (String prefixToMatch : terminalsToIgnoreCardEventsFor) {
 			if (cardTerminal.getName().startsWith(prefixToMatch)) {
 				return true;
 			}
@@ -437,16 +632,21 @@ public class CardAndTerminalManager implements Runnable {
 		return false;
 	}
 
+	private boolean isCardPresent(CardTerminal terminal) {
+		try {
+			return terminal.isCardPresent();
+		} catch (CardException cex) {
+			logger.error("Problem determining card presence in terminal [" + terminal.getName() + "]");
+			return false;
+		}
+	}
+
 	private Set<CardTerminal> terminalsWithCardsIn(Set<CardTerminal> terminals) {
 		Set<CardTerminal> terminalsWithCards = new HashSet<>();
 
 		for (CardTerminal terminal : terminals) {
-			try {
-				if (terminal.isCardPresent() && !areCardEventsIgnoredFor(terminal)) {
-					terminalsWithCards.add(terminal);
-				}
-			} catch (CardException cex) {
-				logger.error("Problem determining card presence in terminal [" + terminal.getName() + "]");
+			if (!areCardEventsIgnoredFor(terminal) && isCardPresent(terminal)) {
+				terminalsWithCards.add(terminal);
 			}
 		}
 
@@ -477,20 +677,22 @@ public class CardAndTerminalManager implements Runnable {
 		listenersTerminalsDetached(detached);
 	}
 
-	private void listenersUpdateInSequence(Set<CardTerminal> attached, Set<CardTerminal> inserted, Set<CardTerminal> removed, Set<CardTerminal> detached) {
+	// package-private for ListenerDispatchBenchmark
+	void listenersUpdateInSequence(Set<CardTerminal> attached, Set<CardTerminal> inserted, Set<CardTerminal> removed, Set<CardTerminal> detached) {
 		listenersTerminalsAttached(attached);
 		listenersTerminalsWithCardsInserted(inserted);
 		listenersTerminalsWithCardsRemoved(removed);
 		listenersTerminalsDetached(detached);
 	}
 
-	private void listenersInitialized() {
+	private void listenersInitialized() throws InterruptedException {
+		dispatcher.awaitIdle();
 		listenersTerminalEventsInitialized();
 		listenersCardEventsInitialized();
 	}
 
 	private void listenersCardEventsInitialized() {
-		for (CardEventsListener listener : copyOf(cardEventsListeners)) {
+		for (CardEventsListener listener : cardEventsListeners) {
 			try {
 				listener.cardEventsInitialized();
 			} catch (Exception thrownInListener) {
@@ -500,7 +702,7 @@ public class CardAndTerminalManager implements Runnable {
 	}
 
 	private void listenersTerminalEventsInitialized() {
-		for (CardTerminalEventsListener listener : copyOf(cardTerminalEventsListeners)) {
+		for (CardTerminalEventsListener listener : cardTerminalEventsListeners) {
 			try {
 				listener.terminalEventsInitialized();
 			} catch (Exception thrownInListener) {
@@ -513,13 +715,15 @@ public class CardAndTerminalManager implements Runnable {
 	private void listenersTerminalsAttached(Set<CardTerminal> attached) {
 		if (!attached.isEmpty()) {
 			for (CardTerminal terminal : attached) {
-				for (CardTerminalEventsListener listener : copyOf(cardTerminalEventsListeners)) {
-					try {
-						listener.terminalAttached(terminal);
-					} catch (Exception thrownInListener) {
-						logger.error("Exception thrown in CardTerminalEventsListener.terminalAttached:" + thrownInListener.getMessage());
+				dispatcher.execute(terminal, () -> {
+					for (CardTerminalEventsListener listener : cardTerminalEventsListeners) {
+						try {
+							listener.terminalAttached(terminal);
+						} catch (Exception thrownInListener) {
+							logger.error("Exception thrown in CardTerminalEventsListener.terminalAttached:" + thrownInListener.getMessage());
+						}
 					}
-				}
+				});
 			}
 		}
 	}
@@ -527,38 +731,33 @@ public class CardAndTerminalManager implements Runnable {
 	// Tell listeners about detached readers
 	private void listenersTerminalsDetached(Set<CardTerminal> detached) {
 		if (!detached.isEmpty()) {
-			Set<CardTerminalEventsListener> copyOfListeners = copyOf(cardTerminalEventsListeners);
-
 			for (CardTerminal terminal : detached) {
-				for (CardTerminalEventsListener listener : copyOfListeners) {
-					try {
-						listener.terminalDetached(terminal);
-					} catch (Exception thrownInListener) {
-						logger.error("Exception thrown in CardTerminalEventsListener.terminalDetached:" + thrownInListener.getMessage());
+				dispatcher.execute(terminal, () -> {
+					for (CardTerminalEventsListener listener : cardTerminalEventsListeners) {
+						try {
+							listener.terminalDetached(terminal);
+						} catch (Exception thrownInListener) {
+							logger.error("Exception thrown in CardTerminalEventsListener.terminalDetached:" + thrownInListener.getMessage());
+						}
 					}
-				}
+				});
 			}
 		}
 	}
 
-	@SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
-	private <T> Set<T> copyOf(Set<T> set) {
-		synchronized (set) {
-			return new HashSet<>(set);
-		}
-	}
-
 	// Tell listeners about removed cards
 	private void listenersTerminalsWithCardsRemoved(Set<CardTerminal> removed) {
 		if (!removed.isEmpty()) {
 			for (CardTerminal terminal : removed) {
-				for (CardEventsListener listener : copyOf(cardEventsListeners)) {
-					try {
-						listener.cardRemoved(terminal);
-					} catch (Exception thrownInListener) {
-						logger.error("Exception thrown in CardEventsListener.cardRemoved:" + thrownInListener.getMessage());
+				dispatcher.execute(terminal, () -> {
+					for (CardEventsListener listener : cardEventsListeners) {
+						try {
+							listener.cardRemoved(terminal);
+						} catch (Exception thrownInListener) {
+							logger.error("Exception thrown in CardEventsListener.cardRemoved:" + thrownInListener.getMessage());
+						}
 					}
-				}
+				});
 			}
 		}
 	}
@@ -568,26 +767,29 @@ public class CardAndTerminalManager implements Runnable {
 	// if autoconnect is enabled (the default), the card argument may be
 	// automatically
 	// filled out, but it may still be null, if the connect failed.
+	// with an executor set, connects to cards in different terminals run in parallel.
 	private void listenersTerminalsWithCardsInserted(Set<CardTerminal> inserted) {
 		if (!inserted.isEmpty()) {
 			for (CardTerminal terminal : inserted) {
-				Card card = null;
-
-				if (autoconnect) {
-					try {
-						card = terminal.connect(protocol.getProtocol());
-					} catch (CardException cex) {
-						logger.debug("terminal.connect(" + protocol.getProtocol() + ") failed. " + cex.getMessage());
+				dispatcher.execute(terminal, () -> {
+					Card card = null;
+
+					if (autoconnect) {
+						try {
+							card = terminal.connect(protocol.getProtocol());
+						} catch (CardException cex) {
+							logger.debug("terminal.connect(" + protocol.getProtocol() + ") failed. " + cex.getMessage());
+						}
 					}
-				}
 
-				for (CardEventsListener listener : copyOf(cardEventsListeners)) {
-					try {
-						listener.cardInserted(terminal, card);
-					} catch (Exception thrownInListener) {
-						logger.error("Exception thrown in CardEventsListener.cardInserted:" + thrownInListener.getMessage());
+					for (CardEventsListener listener : cardEventsListeners) {
+						try {
+							listener.cardInserted(terminal, card);
+						} catch (Exception thrownInListener) {
+							logger.error("Exception thrown in CardEventsListener.cardInserted:" + thrownInListener.getMessage());
+						}
 					}
-				}
+				});
 			}
 		}
 	}
@@ -0,0 +1,351 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A CertificateStore keeps the Citizen CA and Root certificates, which are
+ * the same on millions of cards, in a directory on disk, so that building a
+ * certificate chain only needs to read the leaf certificate from the card.
+ * The issuer of a certificate is looked up by the authority key identifier
+ * of that certificate. A CA that is certified again keeps its key, and so
+ * its subject key identifier, so there can be more than one certificate per
+ * identifier; the issuer is the one whose key verifies the signature of the
+ * certificate.
+ * <p>
+ * The store is content-addressed: each certificate is kept in a file named
+ * after the SHA-256 digest of its encoding, and files that don't match their
+ * name are ignored when the store is opened. The first time a BeIDCard takes
+ * a certificate from the store, it reads that certificate from the card in
+ * the background and confirms it has the same digest; when it doesn't, the
+ * certificate from the card is added to the store as well.
+ * <p>
+ * A BeIDCard only uses a CertificateStore after
+ * {@link BeIDCard#setCertificateStore(CertificateStore)}. Thread-safe.
+ */
+public class CertificateStore {
+
+	private static final String SUFFIX = ".der";
+	private static final String SUBJECT_KEY_IDENTIFIER = "2.5.29.14";
+	private static final String AUTHORITY_KEY_IDENTIFIER = "2.5.29.35";
+
+	private final Path directory;
+	private final Executor verificationExecutor;
+	private final CertificateFactory certificateFactory;
+	private final Map<ByteBuffer, List<Entry>> entries;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	/**
+	 * A CertificateStore in the given directory, confirming certificates on a
+	 * background thread.
+	 *
+	 * @param directory the directory to keep the certificates in, created if
+	 *                  it doesn't exist
+	 */
+	public CertificateStore(Path directory) throws IOException {
+		this(directory, createVerificationExecutor());
+	}
+
+	/**
+	 * @param directory            the directory to keep the certificates in,
+	 *                             created if it doesn't exist
+	 * @param verificationExecutor runs the reads that confirm certificates
+	 *                             taken from the store
+	 */
+	public CertificateStore(Path directory, Executor verificationExecutor) throws IOException {
+		this.directory = directory;
+		this.verificationExecutor = verificationExecutor;
+		this.entries = new ConcurrentHashMap<>();
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		try {
+			this.certificateFactory = CertificateFactory.getInstance("X.509");
+		} catch (CertificateException e) {
+			throw new RuntimeException("X.509 algo", e);
+		}
+
+		Files.createDirectories(directory);
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path file : files) {
+				load(file);
+			}
+		}
+	}
+
+	private static ExecutorService createVerificationExecutor() {
+		return Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "CertificateStore");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * @param certificate a certificate
+	 * @return the certificate in this store whose key verifies the signature
+	 * of the given one, or null if the issuer is not in this store
+	 */
+	public X509Certificate getIssuer(X509Certificate certificate) {
+		byte[] authorityKeyIdentifier = getKeyIdentifier(certificate, AUTHORITY_KEY_IDENTIFIER);
+		List<Entry> candidates = authorityKeyIdentifier == null ? null : entries.get(ByteBuffer.wrap(authorityKeyIdentifier));
+		if (candidates != null) {
+			for (Entry candidate : candidates) {
+				if (candidate.isIssuerOf(certificate)) {
+					hits.incrementAndGet();
+					return candidate.certificate;
+				}
+			}
+		}
+
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Adds a certificate to this store, and writes it to disk. Certificates
+	 * without a subject key identifier are not kept.
+	 *
+	 * @param certificateFile the certificate file as read from a card
+	 * @return the decoded certificate
+	 */
+	public X509Certificate put(byte[] certificateFile) throws CertificateException, IOException {
+		X509Certificate certificate = decode(certificateFile);
+		// card files are padded, keep the certificate only
+		byte[] encodedCertificate = certificate.getEncoded();
+		byte[] subjectKeyIdentifier = getKeyIdentifier(certificate, SUBJECT_KEY_IDENTIFIER);
+		if (subjectKeyIdentifier == null) {
+			return certificate;
+		}
+
+		String name = toHex(sha256(encodedCertificate));
+		Path file = directory.resolve(name + SUFFIX);
+		if (!Files.exists(file)) {
+			Path temporaryFile = Files.createTempFile(directory, name, ".tmp");
+			try {
+				Files.write(temporaryFile, encodedCertificate);
+				Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temporaryFile);
+			}
+		}
+
+		add(subjectKeyIdentifier, new Entry(certificate, sha256(encodedCertificate)));
+		return certificate;
+	}
+
+	/**
+	 * Checks a certificate taken from this store against its encoding as read
+	 * from a card. When they differ, the certificate from the card is added
+	 * to the store; the one from the store is kept, as the issuer of the
+	 * certificates its key verifies.
+	 *
+	 * @param certificate     a certificate returned by this store
+	 * @param certificateFile the certificate file as read from a card
+	 * @return true if the store holds the same certificate as the card
+	 */
+	public boolean confirm(X509Certificate certificate, byte[] certificateFile) throws IOException {
+		X509Certificate cardCertificate;
+		try {
+			cardCertificate = decode(certificateFile);
+			if (Arrays.equals(certificate.getEncoded(), cardCertificate.getEncoded())) {
+				return true;
+			}
+		} catch (CertificateException e) {
+			// not a certificate at all, so not the one in the store either
+			return false;
+		}
+
+		try {
+			put(cardCertificate.getEncoded());
+		} catch (CertificateException e) {
+			// decoded above
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of certificates in this store
+	 */
+	public int size() {
+		int size = 0;
+		for (List<Entry> entriesWithKeyIdentifier : entries.values()) {
+			size += entriesWithKeyIdentifier.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return the number of issuers that were found in this store
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of issuers that had to be read from a card
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	void verifyLater(Runnable verification) {
+		verificationExecutor.execute(verification);
+	}
+
+	private void load(Path file) throws IOException {
+		byte[] encodedCertificate = Files.readAllBytes(file);
+		byte[] digest = sha256(encodedCertificate);
+		String fileName = file.getFileName().toString();
+		if (!fileName.equals(toHex(digest) + SUFFIX)) {
+			// corrupted, or not ours
+			return;
+		}
+
+		try {
+			X509Certificate certificate = decode(encodedCertificate);
+			byte[] subjectKeyIdentifier = getKeyIdentifier(certificate, SUBJECT_KEY_IDENTIFIER);
+			if (subjectKeyIdentifier != null) {
+				add(subjectKeyIdentifier, new Entry(certificate, digest));
+			}
+		} catch (CertificateException e) {
+			// the digest matched, so this was never a certificate
+		}
+	}
+
+	private void add(byte[] subjectKeyIdentifier, Entry entry) {
+		List<Entry> entriesWithKeyIdentifier = entries.computeIfAbsent(ByteBuffer.wrap(subjectKeyIdentifier), key -> new CopyOnWriteArrayList<>());
+		synchronized (entriesWithKeyIdentifier) {
+			for (Entry existingEntry : entriesWithKeyIdentifier) {
+				if (MessageDigest.isEqual(existingEntry.digest, entry.digest)) {
+					return;
+				}
+			}
+			entriesWithKeyIdentifier.add(entry);
+		}
+	}
+
+	private X509Certificate decode(byte[] encodedCertificate) throws CertificateException {
+		synchronized (certificateFactory) {
+			return (X509Certificate) certificateFactory.generateCertificate(new ByteArrayInputStream(encodedCertificate));
+		}
+	}
+
+	/*
+	 * Both extensions are an OCTET STRING holding either the key identifier
+	 * as OCTET STRING (subject) or a SEQUENCE starting with the key identifier
+	 * as [0] IMPLICIT OCTET STRING (authority).
+	 */
+	private static byte[] getKeyIdentifier(X509Certificate certificate, String oid) {
+		byte[] extensionValue = certificate.getExtensionValue(oid);
+		if (extensionValue == null) {
+			return null;
+		}
+
+		try {
+			int[] position = {0};
+			readHeader(extensionValue, position, 0x04);
+			if (SUBJECT_KEY_IDENTIFIER.equals(oid)) {
+				int length = readHeader(extensionValue, position, 0x04);
+				return Arrays.copyOfRange(extensionValue, position[0], position[0] + length);
+			}
+
+			readHeader(extensionValue, position, 0x30);
+			int length = readHeader(extensionValue, position, 0x80);
+			return Arrays.copyOfRange(extensionValue, position[0], position[0] + length);
+		} catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+			return null;
+		}
+	}
+
+	private static int readHeader(byte[] der, int[] position, int expectedTag) {
+		if ((der[position[0]++] & 0xff) != expectedTag) {
+			throw new IllegalArgumentException("unexpected tag");
+		}
+
+		int length = der[position[0]++] & 0xff;
+		if (length >= 0x80) {
+			int lengthBytes = length & 0x7f;
+			length = 0;
+			for (int idx = 0; idx < lengthBytes; idx++) {
+				length = length << 8 | der[position[0]++] & 0xff;
+			}
+		}
+		if (length < 0 || position[0] + length > der.length) {
+			throw new IllegalArgumentException("invalid length");
+		}
+		return length;
+	}
+
+	private static byte[] sha256(byte[] data) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(data);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-256 algo", e);
+		}
+	}
+
+	private static String toHex(byte[] data) {
+		StringBuilder hex = new StringBuilder(data.length * 2);
+		for (byte b : data) {
+			hex.append(String.format("%02x", b & 0xff));
+		}
+		return hex.toString();
+	}
+
+	private static class Entry {
+		private final X509Certificate certificate;
+		private final byte[] digest;
+
+		Entry(X509Certificate certificate, byte[] digest) {
+			this.certificate = certificate;
+			this.digest = digest;
+		}
+
+		boolean isIssuerOf(X509Certificate issuedCertificate) {
+			try {
+				issuedCertificate.verify(certificate.getPublicKey());
+				return true;
+			} catch (GeneralSecurityException e) {
+				return false;
+			}
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.client;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A FileCache holds the contents of the files read from eID cards that can't
+ * change while the card is inserted (see {@link FileType#isCacheable()}), so
+ * that reading them a second time does not go to the chip again. Entries are
+ * keyed by the serial number the card reports in its CARD DATA, so one
+ * FileCache may be shared by several BeIDCard instances, for example by
+ * handing it to {@link BeIDCardManager#setFileCache(FileCache)}.
+ * <p>
+ * Caching is opt-in: a BeIDCard only uses a FileCache after
+ * {@link BeIDCard#setFileCache(FileCache)}. The entries of a card are dropped
+ * when that BeIDCard is closed, which BeIDCardManager does when the card is
+ * removed.
+ */
+public class FileCache {
+
+	private final Map<String, Map<FileType, byte[]>> files;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	public FileCache() {
+		this.files = new ConcurrentHashMap<>();
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+	}
+
+	/**
+	 * Returns a copy of the cached contents of a file, or null when the file
+	 * of the card with the given serial number is not in this cache.
+	 */
+	byte[] get(String serialNumber, FileType fileType) {
+		Map<FileType, byte[]> cardFiles = files.get(serialNumber);
+		byte[] data = null;
+		if (cardFiles != null) {
+			synchronized (cardFiles) {
+				data = cardFiles.get(fileType);
+			}
+		}
+
+		if (data == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		hits.incrementAndGet();
+		return data.clone();
+	}
+
+	void put(String serialNumber, FileType fileType, byte[] data) {
+		if (!fileType.isCacheable()) {
+			throw new IllegalArgumentException("Not a cacheable file: " + fileType.name());
+		}
+
+		Map<FileType, byte[]> cardFiles = files.computeIfAbsent(serialNumber, key -> new EnumMap<>(FileType.class));
+		synchronized (cardFiles) {
+			cardFiles.put(fileType, data.clone());
+		}
+	}
+
+	/**
+	 * Drop all files cached for the card with the given serial number.
+	 *
+	 * @param serialNumber the card serial number, as hexadecimal string
+	 */
+	public void invalidate(String serialNumber) {
+		files.remove(serialNumber);
+	}
+
+	/**
+	 * Drop all files cached for all cards.
+	 */
+	public void clear() {
+		files.clear();
+	}
+
+	/**
+	 * @return the number of cards that currently have files in this cache
+	 */
+	public int getCardCount() {
+		return files.size();
+	}
+
+	/**
+	 * @return the number of reads that were served from this cache
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of reads of cacheable files that had to go to the card
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+}
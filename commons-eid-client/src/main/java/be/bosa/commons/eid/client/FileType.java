@@ -73,4 +73,14 @@ public enum FileType {
 	public int getEstimatedMaxSize() {
 		return estimatedMaxSize;
 	}
+
+	/**
+	 * Whether the contents of this file are fixed for the lifetime of the
+	 * card, and can therefore be cached for as long as the card stays
+	 * inserted. Only the address and its signature can be rewritten after
+	 * personalisation.
+	 */
+	public boolean isCacheable() {
+		return this != Address && this != AddressSignature;
+	}
 }
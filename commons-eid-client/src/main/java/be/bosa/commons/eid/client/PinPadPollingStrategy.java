@@ -0,0 +1,190 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+
+package be.bosa.commons.eid.client;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A PinPadPollingStrategy decides how often a BeIDCard asks a PIN pad reader
+ * whether the citizen pressed a key, while a PIN is entered on the reader
+ * with the VERIFY/MODIFY PIN START and FINISH commands. Readers that do PIN
+ * entry in one VERIFY/MODIFY PIN DIRECT command block instead, and are never
+ * polled.
+ * <ul>
+ * <li>{@link #fixedInterval()}: poll every 200 ms. This is the default.</li>
+ * <li>{@link #adaptive()}: poll every 10 ms right after a key was pressed,
+ * backing off to every 200 ms the longer no key is pressed.</li>
+ * </ul>
+ * Shorter intervals notice the OK key sooner, at the cost of more control
+ * commands to the reader. The latency this adds, at most the interval before
+ * the OK key was seen, is recorded per card reader model: the reader name
+ * without the slot or instance number PC/SC appends to it, so that all
+ * readers of one model add up.
+ */
+public abstract class PinPadPollingStrategy {
+
+	private static final long FIXED_INTERVAL = 200;
+	private static final long ADAPTIVE_MIN_INTERVAL = 10;
+	private static final long ADAPTIVE_MAX_INTERVAL = 200;
+
+	private final AtomicLong pollCount;
+	private final Map<String, AddedLatency> addedLatencies;
+
+	protected PinPadPollingStrategy() {
+		this.pollCount = new AtomicLong();
+		this.addedLatencies = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * @return a strategy that polls every 200 ms
+	 */
+	public static PinPadPollingStrategy fixedInterval() {
+		return fixedInterval(FIXED_INTERVAL);
+	}
+
+	/**
+	 * @param interval the number of ms between polls
+	 * @return a strategy that polls at a fixed interval
+	 */
+	public static PinPadPollingStrategy fixedInterval(long interval) {
+		if (interval <= 0) {
+			throw new IllegalArgumentException("interval should be positive");
+		}
+
+		return new PinPadPollingStrategy() {
+			@Override
+			protected long getPollInterval(String readerName, long idleMillis) {
+				return interval;
+			}
+		};
+	}
+
+	/**
+	 * @return a strategy that polls every 10 to 200 ms
+	 */
+	public static PinPadPollingStrategy adaptive() {
+		return adaptive(ADAPTIVE_MIN_INTERVAL, ADAPTIVE_MAX_INTERVAL);
+	}
+
+	/**
+	 * A strategy that waits a quarter of the time since the last key was
+	 * pressed before polling again, but no less than minInterval and no more
+	 * than maxInterval ms. As the citizen presses OK shortly after the last
+	 * digit, this is usually noticed within minInterval.
+	 *
+	 * @param minInterval the number of ms between polls right after a key was pressed
+	 * @param maxInterval the number of ms between polls while no key is pressed
+	 * @return a strategy that backs off while no key is pressed
+	 */
+	public static PinPadPollingStrategy adaptive(long minInterval, long maxInterval) {
+		if (minInterval <= 0 || maxInterval < minInterval) {
+			throw new IllegalArgumentException("0 < minInterval <= maxInterval expected");
+		}
+
+		return new PinPadPollingStrategy() {
+			@Override
+			protected long getPollInterval(String readerName, long idleMillis) {
+				return Math.max(minInterval, Math.min(maxInterval, idleMillis / 4));
+			}
+		};
+	}
+
+	/**
+	 * @param readerName the name of the card reader
+	 * @param idleMillis the number of ms since PIN entry started or since the
+	 *                   last key was pressed
+	 * @return the number of ms to wait before polling the reader again
+	 */
+	protected abstract long getPollInterval(String readerName, long idleMillis);
+
+	/**
+	 * Called by CCID when the reader reported no key press: waits before the
+	 * reader is polled again.
+	 *
+	 * @param readerName the name of the card reader
+	 * @param idleMillis the number of ms since PIN entry started or since the
+	 *                   last key was pressed
+	 * @return the number of ms waited
+	 */
+	public long waitBeforePoll(String readerName, long idleMillis) throws InterruptedException {
+		long interval = getPollInterval(readerName, idleMillis);
+		pollCount.incrementAndGet();
+		Thread.sleep(interval);
+		return interval;
+	}
+
+	/**
+	 * Called by CCID when the citizen pressed OK.
+	 *
+	 * @param readerName   the name of the card reader
+	 * @param lastInterval the number of ms waited right before the OK key was
+	 *                     seen, 0 if the reader was polled without waiting
+	 */
+	public void confirmed(String readerName, long lastInterval) {
+		addedLatencies.computeIfAbsent(getReaderModel(readerName), model -> new AddedLatency()).add(lastInterval);
+	}
+
+	/**
+	 * @return the number of times this strategy waited to poll a reader
+	 */
+	public long getPollCount() {
+		return pollCount.get();
+	}
+
+	/**
+	 * @return by card reader model, the mean number of ms the OK key may have
+	 * been pressed before it was noticed
+	 */
+	public Map<String, Long> getAddedLatencies() {
+		Map<String, Long> means = new HashMap<>();
+		for (Map.Entry<String, AddedLatency> entry : addedLatencies.entrySet()) {
+			means.put(entry.getKey(), entry.getValue().getMean());
+		}
+		return means;
+	}
+
+	/*
+	 * pcsc-lite appends the reader and slot index, " 00 00"; Windows appends
+	 * the instance number, " 0".
+	 */
+	private static String getReaderModel(String readerName) {
+		String readerModel = readerName.replaceFirst(" \\d\\d \\d\\d$", "");
+		if (readerModel.equals(readerName)) {
+			readerModel = readerName.replaceFirst(" \\d+$", "");
+		}
+		return readerModel;
+	}
+
+	private static class AddedLatency {
+		private long total;
+		private long count;
+
+		synchronized void add(long latency) {
+			total += latency;
+			count++;
+		}
+
+		synchronized long getMean() {
+			return count == 0 ? 0 : total / count;
+		}
+	}
+}
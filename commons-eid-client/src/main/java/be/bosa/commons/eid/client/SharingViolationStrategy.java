@@ -0,0 +1,180 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A SharingViolationStrategy decides how a BeIDCard deals with
+ * SCARD_E_SHARING_VIOLATION errors, which some PC/SC stacks return when a
+ * command follows a SELECT FILE too closely:
+ * <ul>
+ * <li>{@link #fixedDelay()}: wait 20 ms after every SELECT FILE, and never
+ * retry. This is the default.</li>
+ * <li>{@link #noDelay()}: never wait, never retry.</li>
+ * <li>{@link #adaptive()}: don't wait, but retry with exponential back-off when
+ * a sharing violation does occur. Readers that ever produced one get the
+ * 20 ms delay after SELECT FILE from then on.</li>
+ * </ul>
+ * Readers are remembered by name, so share one instance between BeIDCards
+ * (for example through {@link BeIDCardManager#setSharingViolationStrategy})
+ * for the adaptive strategy to pay off.
+ */
+public abstract class SharingViolationStrategy {
+
+	private static final String SHARING_VIOLATION = "SCARD_E_SHARING_VIOLATION";
+	private static final long SELECT_FILE_DELAY = 20;
+
+	private final AtomicLong appliedDelay;
+	private final AtomicLong sharingViolations;
+
+	protected SharingViolationStrategy() {
+		this.appliedDelay = new AtomicLong();
+		this.sharingViolations = new AtomicLong();
+	}
+
+	/**
+	 * @return a strategy that always waits 20 ms after SELECT FILE
+	 */
+	public static SharingViolationStrategy fixedDelay() {
+		return new SharingViolationStrategy() {
+			@Override
+			protected long getSelectFileDelay(String readerName) {
+				return SELECT_FILE_DELAY;
+			}
+
+			@Override
+			protected long getRetryDelay(String readerName, int attempt) {
+				return -1;
+			}
+		};
+	}
+
+	/**
+	 * @return a strategy that neither waits nor retries
+	 */
+	public static SharingViolationStrategy noDelay() {
+		return new SharingViolationStrategy() {
+			@Override
+			protected long getSelectFileDelay(String readerName) {
+				return 0;
+			}
+
+			@Override
+			protected long getRetryDelay(String readerName, int attempt) {
+				return -1;
+			}
+		};
+	}
+
+	/**
+	 * @return a strategy that only waits for readers that need it
+	 */
+	public static SharingViolationStrategy adaptive() {
+		return new Adaptive();
+	}
+
+	/**
+	 * @param readerName the name of the card reader
+	 * @return the number of ms to wait after a SELECT FILE
+	 */
+	protected abstract long getSelectFileDelay(String readerName);
+
+	/**
+	 * @param readerName the name of the card reader
+	 * @param attempt    the number of the retry, starting at 1
+	 * @return the number of ms to wait before retrying a command that failed
+	 * with a sharing violation, or -1 to give up
+	 */
+	protected abstract long getRetryDelay(String readerName, int attempt);
+
+	/**
+	 * @return the total number of ms this strategy made BeIDCards wait
+	 */
+	public long getAppliedDelay() {
+		return appliedDelay.get();
+	}
+
+	/**
+	 * @return the number of sharing violations seen by this strategy
+	 */
+	public long getSharingViolationCount() {
+		return sharingViolations.get();
+	}
+
+	void delayAfterSelectFile(String readerName) throws InterruptedException {
+		delay(getSelectFileDelay(readerName));
+	}
+
+	/*
+	 * Called when a command failed; returns true after waiting if the command
+	 * should be sent again.
+	 */
+	boolean retry(String readerName, int attempt, Throwable exception) throws InterruptedException {
+		if (!isSharingViolation(exception)) {
+			return false;
+		}
+
+		sharingViolations.incrementAndGet();
+		long retryDelay = getRetryDelay(readerName, attempt);
+		if (retryDelay < 0) {
+			return false;
+		}
+
+		delay(retryDelay);
+		return true;
+	}
+
+	private void delay(long millis) throws InterruptedException {
+		if (millis > 0) {
+			Thread.sleep(millis);
+			appliedDelay.addAndGet(millis);
+		}
+	}
+
+	private static boolean isSharingViolation(Throwable exception) {
+		for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+			if (cause.getMessage() != null && cause.getMessage().contains(SHARING_VIOLATION)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static class Adaptive extends SharingViolationStrategy {
+
+		private static final long FIRST_RETRY_DELAY = 5;
+		private static final int MAX_RETRIES = 5;
+
+		private final Map<String, Boolean> readersNeedingDelay = new ConcurrentHashMap<>();
+
+		@Override
+		protected long getSelectFileDelay(String readerName) {
+			return readersNeedingDelay.containsKey(readerName) ? SELECT_FILE_DELAY : 0;
+		}
+
+		@Override
+		protected long getRetryDelay(String readerName, int attempt) {
+			readersNeedingDelay.put(readerName, Boolean.TRUE);
+			return attempt > MAX_RETRIES ? -1 : FIRST_RETRY_DELAY << (attempt - 1);
+		}
+	}
+}
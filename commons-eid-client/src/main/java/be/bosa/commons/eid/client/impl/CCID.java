@@ -32,6 +32,7 @@ import javax.smartcardio.CardTerminal;
 import javax.smartcardio.CommandAPDU;
 import javax.smartcardio.ResponseAPDU;
 
+import be.bosa.commons.eid.client.PinPadPollingStrategy;
 import be.bosa.commons.eid.client.exception.BeIDException;
 import be.bosa.commons.eid.client.spi.Logger;
 
@@ -59,6 +60,7 @@ public class CCID {
 
 	private final Logger logger;
 	private final Card card;
+	private final String readerName;
 	private final EnumMap<FEATURE, Integer> features;
 	private boolean usesPPDU;
 
@@ -109,16 +111,39 @@ public class CCID {
 
 	public CCID(Card card, CardTerminal cardTerminal, Logger logger) {
 		this.card = card;
+		this.readerName = cardTerminal.getName();
 		this.logger = logger;
 		this.features = new EnumMap<>(FEATURE.class);
 		this.usesPPDU = false;
 
+		CCIDCapabilityCache capabilityCache = CCIDCapabilityCache.getInstance();
+		CCIDCapabilityCache.Capabilities capabilities = capabilityCache.get(readerName);
+		if (capabilities != null) {
+			this.logger.debug("CCID FEATURES of [" + readerName + "] found in capability cache");
+			features.putAll(capabilities.getFeatures());
+			usesPPDU = capabilities.usesPPDU();
+			return;
+		}
+
+		// a failed discovery is asked again for the next card, not remembered as no features
+		if (getFeatures(card, cardTerminal)) {
+			capabilityCache.put(readerName, features, usesPPDU);
+		}
+	}
+
+	/*
+	 * @return true if the reader answered, false if asking it failed
+	 */
+	private boolean getFeatures(Card card, CardTerminal cardTerminal) {
 		boolean onMSWindows = (System.getProperty("os.name") != null && System.getProperty("os.name").startsWith("Windows"));
+		boolean answered;
 
 		try {
 			getFeaturesUsingControlChannel(card, onMSWindows);
+			answered = true;
 		} catch (CardException cexInNormal) {
 			this.logger.debug("GET_FEATURES over standard control command failed: " + cexInNormal.getMessage());
+			answered = false;
 		}
 
 		if (features.isEmpty()) {
@@ -126,13 +151,17 @@ public class CCID {
 				this.logger.debug("Attempting To get CCID FEATURES using Pseudo-APDU Fallback Strategy");
 				try {
 					getFeaturesUsingPPDU(card);
+					answered = true;
 				} catch (CardException cexInPseudo) {
 					this.logger.error("Pseudo-APDU Fallback strategy failed as well: " + cexInPseudo.getMessage());
+					answered = false;
 				}
 			} else {
 				this.logger.debug("Not risking PPDU Fallback strategy for CardTerminal [" + cardTerminal.getName() + "] on this platform");
 			}
 		}
+
+		return answered;
 	}
 
 	private void getFeaturesUsingControlChannel(Card card, boolean onMSWindows) throws CardException {
@@ -230,7 +259,10 @@ public class CCID {
 		}
 	}
 
-	public void waitForOK() throws BeIDException, InterruptedException {
+	public void waitForOK(PinPadPollingStrategy pollingStrategy) throws BeIDException, InterruptedException {
+		long idleSince = System.nanoTime();
+		long lastInterval = 0;
+
 		// wait for key pressed
 		while (true) {
 			byte[] keyPressedResult = transmitControlCommand(getFeature(FEATURE.GET_KEY_PRESSED), new byte[0]);
@@ -238,19 +270,25 @@ public class CCID {
 			switch (key) {
 				case 0x00:
 					logger.debug("waiting for CCID...");
-					Thread.sleep(200);
+					long idleMillis = (System.nanoTime() - idleSince) / 1000000;
+					lastInterval = pollingStrategy.waitBeforePoll(readerName, idleMillis);
 					break;
 
 				case 0x2b:
 					logger.debug("PIN digit");
+					idleSince = System.nanoTime();
+					lastInterval = 0;
 					break;
 
 				case 0x0a:
 					logger.debug("erase PIN digit");
+					idleSince = System.nanoTime();
+					lastInterval = 0;
 					break;
 
 				case 0x0d:
 					logger.debug("user confirmed");
+					pollingStrategy.confirmed(readerName, lastInterval);
 					return;
 
 				case 0x1b:
@@ -0,0 +1,127 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.client.impl;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import be.bosa.commons.eid.client.impl.CCID.FEATURE;
+
+/**
+ * Remembers the CCID features found for each card reader, by reader name, so
+ * that CCID does not have to ask the reader again for every card inserted.
+ * The features of a reader don't change while it stays attached;
+ * BeIDCardManager invalidates a reader's entry when it is detached. Nothing
+ * else does: when BeIDCards are made directly on a CardTerminal, without a
+ * BeIDCardManager watching the readers, an entry stays until
+ * {@link #invalidate(String)} or {@link #clear()} is called, even if another
+ * reader is later attached under the same name. Only features the reader
+ * actually answered with are kept; a failed query is retried with the next
+ * card.
+ * <p>
+ * There is one CCIDCapabilityCache per process, see {@link #getInstance()}.
+ */
+public final class CCIDCapabilityCache {
+
+	private static final CCIDCapabilityCache INSTANCE = new CCIDCapabilityCache();
+
+	private final Map<String, Capabilities> capabilities;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	private CCIDCapabilityCache() {
+		this.capabilities = new ConcurrentHashMap<>();
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+	}
+
+	public static CCIDCapabilityCache getInstance() {
+		return INSTANCE;
+	}
+
+	Capabilities get(String readerName) {
+		Capabilities readerCapabilities = capabilities.get(readerName);
+		if (readerCapabilities == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return readerCapabilities;
+	}
+
+	void put(String readerName, EnumMap<FEATURE, Integer> features, boolean usesPPDU) {
+		capabilities.put(readerName, new Capabilities(features.clone(), usesPPDU));
+	}
+
+	/**
+	 * Forget the features of the given card reader, for when it is detached.
+	 *
+	 * @param readerName the name of the card reader
+	 */
+	public void invalidate(String readerName) {
+		capabilities.remove(readerName);
+	}
+
+	/**
+	 * Forget the features of all card readers.
+	 */
+	public void clear() {
+		capabilities.clear();
+	}
+
+	/**
+	 * @return the number of card readers whose features are known
+	 */
+	public int size() {
+		return capabilities.size();
+	}
+
+	/**
+	 * @return the number of times the features of a reader were found in this cache
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of times the features of a reader had to be asked for
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	static class Capabilities {
+		private final EnumMap<FEATURE, Integer> features;
+		private final boolean usesPPDU;
+
+		private Capabilities(EnumMap<FEATURE, Integer> features, boolean usesPPDU) {
+			this.features = features;
+			this.usesPPDU = usesPPDU;
+		}
+
+		EnumMap<FEATURE, Integer> getFeatures() {
+			return features;
+		}
+
+		boolean usesPPDU() {
+			return usesPPDU;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.client.impl;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks on an Executor such that tasks submitted with the same key run
+ * one after the other, in submission order, while tasks with different keys
+ * may run concurrently. Without an Executor, tasks run in the calling thread.
+ */
+public class KeyedSerialExecutor<K> {
+
+	private final Map<K, Queue<Runnable>> lanes;
+	private Executor executor;
+	private int pending;
+
+	public KeyedSerialExecutor() {
+		this.lanes = new HashMap<>();
+	}
+
+	public synchronized void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	public synchronized Executor getExecutor() {
+		return executor;
+	}
+
+	public void execute(K key, Runnable task) {
+		Executor laneExecutor;
+		synchronized (this) {
+			if (executor == null) {
+				laneExecutor = null;
+			} else {
+				pending++;
+				Queue<Runnable> lane = lanes.get(key);
+				if (lane != null) {
+					// the lane is already being drained, it will pick this up
+					lane.add(task);
+					return;
+				}
+
+				lane = new ArrayDeque<>();
+				lane.add(task);
+				lanes.put(key, lane);
+				laneExecutor = executor;
+			}
+		}
+
+		if (laneExecutor == null) {
+			task.run();
+			return;
+		}
+
+		try {
+			laneExecutor.execute(() -> drain(key));
+		} catch (RuntimeException e) {
+			// rejected: run the lane here instead of losing its tasks
+			drain(key);
+		}
+	}
+
+	/**
+	 * Wait until all tasks submitted so far have run.
+	 */
+	public synchronized void awaitIdle() throws InterruptedException {
+		while (pending > 0) {
+			wait();
+		}
+	}
+
+	private void drain(K key) {
+		boolean laneEmpty = false;
+		try {
+			while (!laneEmpty) {
+				laneEmpty = runNext(key);
+			}
+		} finally {
+			if (!laneEmpty) {
+				// an Error escaped a task; hand the rest of the lane to another thread
+				resume(key);
+			}
+		}
+	}
+
+	/*
+	 * Run the task at the head of the lane, if any.
+	 *
+	 * @return true when the lane was empty, and is gone
+	 */
+	private boolean runNext(K key) {
+		Runnable task;
+		synchronized (this) {
+			Queue<Runnable> lane = lanes.get(key);
+			task = lane.peek();
+			if (task == null) {
+				lanes.remove(key);
+				return true;
+			}
+		}
+
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			// tasks are expected to handle their own exceptions; don't let one stall the lane
+		} finally {
+			synchronized (this) {
+				lanes.get(key).remove();
+				pending--;
+				notifyAll();
+			}
+		}
+		return false;
+	}
+
+	private void resume(K key) {
+		Executor laneExecutor;
+		synchronized (this) {
+			if (lanes.get(key).isEmpty()) {
+				lanes.remove(key);
+				return;
+			}
+			laneExecutor = executor;
+		}
+
+		if (laneExecutor == null) {
+			drain(key);
+			return;
+		}
+		try {
+			laneExecutor.execute(() -> drain(key));
+		} catch (RuntimeException e) {
+			drain(key);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.client.spi;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Turns the certificate files read from the card into X509Certificates. Plug
+ * in a caching implementation, such as the RRNCertificateCache of
+ * commons-eid-consumer ({@code rrnCertificateCache::getCertificate}), to
+ * avoid decoding the same certificates over and over.
+ */
+public interface CertificateDecoder {
+
+	/**
+	 * @param encodedCertificate the DER-encoded certificate
+	 * @return the decoded certificate
+	 * @throws CertificateException when the encoding is invalid
+	 */
+	X509Certificate decode(byte[] encodedCertificate) throws CertificateException;
+}
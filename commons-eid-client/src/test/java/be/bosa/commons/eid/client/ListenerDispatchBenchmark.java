@@ -0,0 +1,154 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.client;
+
+import be.bosa.commons.eid.client.event.CardEventsAdapter;
+import be.bosa.commons.eid.client.event.CardTerminalEventsAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.smartcardio.Card;
+import javax.smartcardio.CardTerminal;
+import javax.smartcardio.CardTerminals;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Events per second dispatched by CardAndTerminalManager to 1, 10 and 100
+ * listeners of each kind. Each invocation dispatches a full attach, insert,
+ * remove, detach sequence for one terminal, on the calling thread.
+ * <p>
+ * Run the main method on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerDispatchBenchmark {
+
+	@Param({"1", "10", "100"})
+	public int listeners;
+
+	private CardAndTerminalManager cardAndTerminalManager;
+	private Set<CardTerminal> terminal;
+	private Set<CardTerminal> none;
+
+	@Setup
+	public void setUp(Blackhole blackhole) {
+		cardAndTerminalManager = new CardAndTerminalManager(new NoCardTerminals());
+		cardAndTerminalManager.setAutoconnect(false);
+		for (int i = 0; i < listeners; i++) {
+			cardAndTerminalManager.addCardTerminalListener(new CardTerminalEventsAdapter() {
+				@Override
+				public void terminalAttached(CardTerminal cardTerminal) {
+					blackhole.consume(cardTerminal);
+				}
+
+				@Override
+				public void terminalDetached(CardTerminal cardTerminal) {
+					blackhole.consume(cardTerminal);
+				}
+			});
+			cardAndTerminalManager.addCardListener(new CardEventsAdapter() {
+				@Override
+				public void cardInserted(CardTerminal cardTerminal, Card card) {
+					blackhole.consume(cardTerminal);
+				}
+
+				@Override
+				public void cardRemoved(CardTerminal cardTerminal) {
+					blackhole.consume(cardTerminal);
+				}
+			});
+		}
+
+		terminal = Collections.singleton(new NamedCardTerminal("Fedix SCR 0"));
+		none = Collections.emptySet();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(4)
+	public void dispatch() {
+		cardAndTerminalManager.listenersUpdateInSequence(terminal, terminal, none, none);
+		cardAndTerminalManager.listenersUpdateInSequence(none, none, terminal, terminal);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(ListenerDispatchBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	private static class NoCardTerminals extends CardTerminals {
+		@Override
+		public List<CardTerminal> list(State state) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public boolean waitForChange(long timeout) {
+			return false;
+		}
+	}
+
+	private static class NamedCardTerminal extends CardTerminal {
+		private final String name;
+
+		NamedCardTerminal(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public Card connect(String protocol) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean isCardPresent() {
+			return false;
+		}
+
+		@Override
+		public boolean waitForCardPresent(long timeout) {
+			return false;
+		}
+
+		@Override
+		public boolean waitForCardAbsent(long timeout) {
+			return false;
+		}
+	}
+}
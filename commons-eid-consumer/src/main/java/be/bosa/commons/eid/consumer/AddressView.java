@@ -0,0 +1,76 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.consumer;
+
+import be.bosa.commons.eid.consumer.tlv.TlvParser;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An immutable view on an eID address file, decoding each field when first
+ * asked for.
+ *
+ * @see IdentityView
+ */
+public final class AddressView extends TlvFileView {
+
+	// the tags of the address file, as annotated in Address
+	private static final int STREET_AND_NUMBER = 1;
+	private static final int ZIP = 2;
+	private static final int MUNICIPALITY = 3;
+
+	/**
+	 * A view decoding the fields of the address file lazily.
+	 */
+	public AddressView(byte[] addressFile) {
+		this(addressFile, false);
+	}
+
+	/**
+	 * @param addressFile the address file, which is copied
+	 * @param eager       true to decode all fields now, false to decode each
+	 *                    on first access
+	 */
+	public AddressView(byte[] addressFile, boolean eager) {
+		super(addressFile, MUNICIPALITY, eager);
+	}
+
+	@Override
+	Object decode(int tag, byte[] file, int offset, int length) {
+		return new String(file, offset, length, StandardCharsets.UTF_8);
+	}
+
+	public String getStreetAndNumber() {
+		return (String) get(STREET_AND_NUMBER);
+	}
+
+	public String getZip() {
+		return (String) get(ZIP);
+	}
+
+	public String getMunicipality() {
+		return (String) get(MUNICIPALITY);
+	}
+
+	/**
+	 * @return the address file parsed into a new Address
+	 */
+	public Address toAddress() {
+		return TlvParser.parse(getData(), Address.class);
+	}
+}
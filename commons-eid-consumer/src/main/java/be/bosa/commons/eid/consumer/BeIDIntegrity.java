@@ -19,7 +19,6 @@
 
 package be.bosa.commons.eid.consumer;
 
-import java.io.ByteArrayInputStream;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -27,9 +26,12 @@ import java.security.PublicKey;
 import java.security.Signature;
 import java.security.SignatureException;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -38,6 +40,10 @@ import be.bosa.commons.eid.consumer.tlv.TlvParser;
 
 /**
  * Utility class for various eID related integrity checks.
+ * <p>
+ * Instances are thread-safe; share one, or at least its
+ * {@link RRNCertificateCache}, to benefit from the certificate cache.
+ * Signature and MessageDigest engines are kept per thread and algorithm.
  *
  * @author Frank Cornelis
  */
@@ -45,26 +51,39 @@ public class BeIDIntegrity {
 
 	private final static Log LOG = LogFactory.getLog(BeIDIntegrity.class);
 
-	private final CertificateFactory certificateFactory;
+	private final RRNCertificateCache certificateCache;
 
 	/**
 	 * Default constructor.
 	 */
 	public BeIDIntegrity() {
+		this(new RRNCertificateCache());
+	}
+
+	/**
+	 * A BeIDIntegrity decoding certificates through the given cache.
+	 */
+	public BeIDIntegrity(RRNCertificateCache certificateCache) {
 		try {
-			this.certificateFactory = CertificateFactory.getInstance("X.509");
+			CryptoEngines.getCertificateFactory();
 		} catch (CertificateException cex) {
 			throw new RuntimeException("X.509 algo", cex);
 		}
+		this.certificateCache = certificateCache;
+	}
+
+	public RRNCertificateCache getCertificateCache() {
+		return certificateCache;
 	}
 
 	/**
-	 * Loads a DER-encoded X509 certificate from a byte array.
+	 * Loads a DER-encoded X509 certificate from a byte array. Certificates
+	 * seen before are taken from the RRNCertificateCache.
 	 */
 	public X509Certificate loadCertificate(byte[] encodedCertificate) {
 		X509Certificate certificate;
 		try {
-			certificate = (X509Certificate) certificateFactory.generateCertificate(new ByteArrayInputStream(encodedCertificate));
+			certificate = certificateCache.getCertificate(encodedCertificate);
 		} catch (CertificateException cex) {
 			throw new RuntimeException("X509 decoding error: "
 					+ cex.getMessage(), cex);
@@ -86,28 +105,11 @@ public class BeIDIntegrity {
 	 */
 	public Identity getVerifiedIdentity(byte[] identityFile, byte[] identitySignatureFile, byte[] photo, X509Certificate rrnCertificate)
 			throws NoSuchAlgorithmException {
-		PublicKey publicKey = rrnCertificate.getPublicKey();
-		boolean result;
-		try {
-			result = verifySignature(rrnCertificate.getSigAlgName(),
-					identitySignatureFile, publicKey, identityFile);
-			if (!result) {
-				throw new SecurityException("signature integrity error");
-			}
-		} catch (Exception ex) {
-			throw new SecurityException(
-					"identity signature verification error: " + ex.getMessage(),
-					ex);
-		}
+		verifyIdentitySignature(identityFile, identitySignatureFile, getCertificateEntry(rrnCertificate));
 
 		Identity identity = TlvParser.parse(identityFile, Identity.class);
 		if (null != photo) {
-			byte[] expectedPhotoDigest = identity.getPhotoDigest();
-			byte[] actualPhotoDigest = digest(
-					getDigestAlgo(expectedPhotoDigest.length), photo);
-			if (!Arrays.equals(expectedPhotoDigest, actualPhotoDigest)) {
-				throw new SecurityException("photo digest mismatch");
-			}
+			verifyPhoto(identity.getPhotoDigest(), photo);
 		}
 		return identity;
 	}
@@ -119,17 +121,128 @@ public class BeIDIntegrity {
 									  byte[] identitySignatureFile,
 									  byte[] addressSignatureFile,
 									  X509Certificate rrnCertificate) {
+		verifyAddressSignature(addressFile, identitySignatureFile, addressSignatureFile, getCertificateEntry(rrnCertificate));
+
+		return TlvParser.parse(addressFile, Address.class);
+	}
+
+	/**
+	 * Verifies the identity, address and (optional) photo of a card in one
+	 * go, running the identity and address signature verifications and the
+	 * photo digest concurrently on the common ForkJoinPool.
+	 *
+	 * @throws SecurityException when any of the files fails verification
+	 */
+	public VerifiedBundle verifyAll(byte[] identityFile, byte[] identitySignatureFile,
+									byte[] addressFile, byte[] addressSignatureFile,
+									byte[] photo, X509Certificate rrnCertificate) {
+		return verifyAll(identityFile, identitySignatureFile, addressFile, addressSignatureFile, photo, rrnCertificate,
+				ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Like {@link #verifyAll(byte[], byte[], byte[], byte[], byte[], X509Certificate)},
+	 * running the verifications on the given Executor. The identity file is
+	 * parsed on the calling thread. The files are copied first, so the bundle
+	 * holds exactly what was verified, whatever the caller does with its
+	 * arrays afterwards.
+	 *
+	 * @throws SecurityException when any of the files fails verification
+	 */
+	public VerifiedBundle verifyAll(byte[] identityFile, byte[] identitySignatureFile,
+									byte[] addressFile, byte[] addressSignatureFile,
+									byte[] photo, X509Certificate rrnCertificate, Executor executor) {
+		byte[] identityCopy = identityFile.clone();
+		byte[] addressCopy = addressFile.clone();
+		byte[] photoCopy = null == photo ? null : photo.clone();
+		RRNCertificateCache.Entry rrnEntry = getCertificateEntry(rrnCertificate);
+
+		CompletableFuture<Void> identityVerification = CompletableFuture.runAsync(
+				() -> verifyIdentitySignature(identityCopy, identitySignatureFile, rrnEntry), executor);
+		CompletableFuture<Void> addressVerification = CompletableFuture.runAsync(
+				() -> verifyAddressSignature(addressCopy, identitySignatureFile, addressSignatureFile, rrnEntry), executor);
+
+		// the photo digest to check against is in the identity file
+		IdentityView identity;
+		CompletableFuture<Void> photoVerification;
+		try {
+			identity = new IdentityView(identityCopy);
+			photoVerification = null == photoCopy ? CompletableFuture.completedFuture(null)
+					: CompletableFuture.runAsync(() -> {
+						try {
+							verifyPhoto(identity.getPhotoDigest(), photoCopy);
+						} catch (NoSuchAlgorithmException ex) {
+							throw new SecurityException("photo digest error: " + ex.getMessage(), ex);
+						}
+					}, executor);
+		} catch (RuntimeException e) {
+			// a corrupted identity file is reported as such by the signature check
+			join(identityVerification);
+			throw e;
+		}
+
+		join(identityVerification);
+		join(addressVerification);
+		join(photoVerification);
+		return new VerifiedBundle(identity, new AddressView(addressCopy), photoCopy, rrnCertificate);
+	}
+
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/*
+	 * The public key and signature algorithm of the RRN certificate are taken
+	 * from the cache, rather than from the certificate every time.
+	 */
+	private RRNCertificateCache.Entry getCertificateEntry(X509Certificate rrnCertificate) {
+		try {
+			return certificateCache.get(rrnCertificate);
+		} catch (CertificateException cex) {
+			throw new SecurityException("RRN certificate encoding error: " + cex.getMessage(), cex);
+		}
+	}
+
+	private void verifyIdentitySignature(byte[] identityFile, byte[] identitySignatureFile, RRNCertificateCache.Entry rrnEntry) {
+		PublicKey publicKey = rrnEntry.getPublicKey();
+		boolean result;
+		try {
+			result = verifySignature(rrnEntry.getSignatureAlgorithm(),
+					identitySignatureFile, publicKey, identityFile);
+			if (!result) {
+				throw new SecurityException("signature integrity error");
+			}
+		} catch (Exception ex) {
+			throw new SecurityException(
+					"identity signature verification error: " + ex.getMessage(),
+					ex);
+		}
+	}
+
+	private void verifyAddressSignature(byte[] addressFile, byte[] identitySignatureFile, byte[] addressSignatureFile, RRNCertificateCache.Entry rrnEntry) {
 		byte[] trimmedAddressFile = trimRight(addressFile);
-		PublicKey publicKey = rrnCertificate.getPublicKey();
+		PublicKey publicKey = rrnEntry.getPublicKey();
 		try {
-			if (!verifySignature(rrnCertificate.getSigAlgName(), addressSignatureFile, publicKey, trimmedAddressFile, identitySignatureFile)) {
+			if (!verifySignature(rrnEntry.getSignatureAlgorithm(), addressSignatureFile, publicKey, trimmedAddressFile, identitySignatureFile)) {
 				throw new SecurityException("address integrity error");
 			}
 		} catch (NoSuchAlgorithmException | SignatureException | InvalidKeyException ex) {
 			throw new SecurityException("address signature verification error: " + ex.getMessage(), ex);
 		}
+	}
 
-		return TlvParser.parse(addressFile, Address.class);
+	private void verifyPhoto(byte[] expectedPhotoDigest, byte[] photo) throws NoSuchAlgorithmException {
+		byte[] actualPhotoDigest = digest(getDigestAlgo(expectedPhotoDigest.length), photo);
+		if (!Arrays.equals(expectedPhotoDigest, actualPhotoDigest)) {
+			throw new SecurityException("photo digest mismatch");
+		}
 	}
 
 	/**
@@ -146,7 +259,7 @@ public class BeIDIntegrity {
 	public boolean verifySignature(String signatureAlgo,
 								   byte[] signatureData, PublicKey publicKey,
 								   byte[]... data) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
-		Signature signature = Signature.getInstance(signatureAlgo);
+		Signature signature = CryptoEngines.getSignature(signatureAlgo);
 		signature.initVerify(publicKey);
 
 		for (byte[] dataItem : data) {
@@ -157,7 +270,7 @@ public class BeIDIntegrity {
 	}
 
 	private byte[] digest(String algoName, byte[] data) throws NoSuchAlgorithmException {
-		MessageDigest messageDigest = MessageDigest.getInstance(algoName);
+		MessageDigest messageDigest = CryptoEngines.getMessageDigest(algoName);
 		return messageDigest.digest(data);
 	}
 
@@ -0,0 +1,353 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.consumer;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Verifies the integrity of archived identity and address files in bulk, the
+ * way {@link BeIDIntegrity#getVerifiedIdentity(byte[], byte[], X509Certificate)}
+ * and {@link BeIDIntegrity#getVerifiedAddress(byte[], byte[], byte[], X509Certificate)}
+ * do for a single card.
+ * <p>
+ * Records are read from a file written with {@link #writeRecord}: five fields,
+ * each a 4-byte big-endian length followed by that many bytes, holding the
+ * identity file, the identity signature, the address file, the address
+ * signature and the DER-encoded RRN certificate. The file is memory-mapped a
+ * window at a time and the records of each window are verified on a
+ * ForkJoinPool, each thread with its own Signature instances. RRN
+ * certificates are decoded once, through an {@link RRNCertificateCache} that
+ * can be shared with a {@link BeIDIntegrity}.
+ *
+ * @see Result
+ */
+public class BulkIntegrityVerifier {
+
+	private static final Log LOG = LogFactory.getLog(BulkIntegrityVerifier.class);
+
+	private static final int FIELDS_PER_RECORD = 5;
+	private static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+	private static final int RECORDS_PER_TASK = 16;
+	private static final int MAX_CACHED_CERTIFICATES = 64;
+
+	private final ForkJoinPool pool;
+	private final int windowSize;
+	private final RRNCertificateCache certificateCache;
+
+	/**
+	 * A BulkIntegrityVerifier running on the common ForkJoinPool.
+	 */
+	public BulkIntegrityVerifier() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * A BulkIntegrityVerifier running on the given ForkJoinPool.
+	 */
+	public BulkIntegrityVerifier(ForkJoinPool pool) {
+		this(pool, new RRNCertificateCache(MAX_CACHED_CERTIFICATES));
+	}
+
+	/**
+	 * A BulkIntegrityVerifier running on the given ForkJoinPool, decoding RRN
+	 * certificates through the given cache.
+	 */
+	public BulkIntegrityVerifier(ForkJoinPool pool, RRNCertificateCache certificateCache) {
+		this(pool, DEFAULT_WINDOW_SIZE, certificateCache);
+	}
+
+	BulkIntegrityVerifier(ForkJoinPool pool, int windowSize) {
+		this(pool, windowSize, new RRNCertificateCache(MAX_CACHED_CERTIFICATES));
+	}
+
+	BulkIntegrityVerifier(ForkJoinPool pool, int windowSize, RRNCertificateCache certificateCache) {
+		this.pool = pool;
+		this.windowSize = windowSize;
+		this.certificateCache = certificateCache;
+	}
+
+	public RRNCertificateCache getCertificateCache() {
+		return certificateCache;
+	}
+
+	/**
+	 * Appends a record in the format read by {@link #verify(Path)}.
+	 */
+	public static void writeRecord(DataOutput out, byte[] identityFile, byte[] identitySignatureFile,
+								   byte[] addressFile, byte[] addressSignatureFile, byte[] rrnCertificate) throws IOException {
+		for (byte[] field : new byte[][]{identityFile, identitySignatureFile, addressFile, addressSignatureFile, rrnCertificate}) {
+			out.writeInt(field.length);
+			out.write(field);
+		}
+	}
+
+	/**
+	 * Verifies all records in the given file.
+	 *
+	 * @return which records are intact
+	 * @throws EOFException when the file ends in the middle of a record
+	 */
+	public Result verify(Path recordFile) throws IOException {
+		long start = System.nanoTime();
+		BitSet valid = new BitSet();
+		int recordCount = 0;
+		Deque<Window> inFlight = new ArrayDeque<>();
+
+		try (FileChannel channel = FileChannel.open(recordFile, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long position = 0;
+			long mapSize = windowSize;
+			while (position < size) {
+				long remaining = size - position;
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(mapSize, remaining));
+				Window window = new Window(buffer, recordCount);
+				if (window.recordCount == 0) {
+					// a record larger than the window
+					if (mapSize >= remaining || mapSize >= Integer.MAX_VALUE) {
+						throw new EOFException("truncated record at offset " + position);
+					}
+					mapSize = Math.min(mapSize * 2, Integer.MAX_VALUE);
+					continue;
+				}
+
+				pool.execute(window);
+				inFlight.add(window);
+				while (inFlight.size() > pool.getParallelism() * 2) {
+					inFlight.remove().collect(valid);
+				}
+
+				recordCount += window.recordCount;
+				position += window.length;
+				mapSize = windowSize;
+			}
+		}
+
+		while (!inFlight.isEmpty()) {
+			inFlight.remove().collect(valid);
+		}
+
+		Result result = new Result(valid, recordCount, System.nanoTime() - start);
+		LOG.debug("verified " + recordCount + " records, " + result.getValidCount() + " intact, "
+				+ Math.round(result.getRecordsPerSecond()) + " records/s");
+		return result;
+	}
+
+	private boolean verifyRecord(ByteBuffer buffer, int offset) {
+		ByteBuffer[] fields = new ByteBuffer[FIELDS_PER_RECORD];
+		for (int field = 0; field < FIELDS_PER_RECORD; field++) {
+			int length = buffer.getInt(offset);
+			offset += 4;
+			ByteBuffer value = buffer.duplicate();
+			value.limit(offset + length);
+			value.position(offset);
+			fields[field] = value;
+			offset += length;
+		}
+		ByteBuffer identityFile = fields[0];
+		ByteBuffer identitySignatureFile = fields[1];
+		ByteBuffer addressFile = fields[2];
+		ByteBuffer addressSignatureFile = fields[3];
+
+		try {
+			RRNCertificateCache.Entry rrnEntry = certificateCache.get(toByteArray(fields[4]));
+			Signature signature = CryptoEngines.getSignature(rrnEntry.getSignatureAlgorithm());
+
+			signature.initVerify(rrnEntry.getPublicKey());
+			signature.update(identityFile);
+			if (!signature.verify(toByteArray(identitySignatureFile))) {
+				return false;
+			}
+
+			// the address is signed without its zero padding, followed by the identity signature
+			for (int idx = addressFile.position(); idx < addressFile.limit(); idx++) {
+				if (0 == addressFile.get(idx)) {
+					addressFile.limit(idx);
+					break;
+				}
+			}
+			signature.initVerify(rrnEntry.getPublicKey());
+			signature.update(addressFile);
+			signature.update(identitySignatureFile);
+			return signature.verify(toByteArray(addressSignatureFile));
+		} catch (GeneralSecurityException | RuntimeException e) {
+			LOG.debug("record verification error: " + e.getMessage());
+			return false;
+		}
+	}
+
+	private static byte[] toByteArray(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+
+	/*
+	 * Total length of the record at offset, or -1 if it doesn't end within the
+	 * buffer.
+	 */
+	private static int getRecordLength(ByteBuffer buffer, int offset) {
+		long end = offset;
+		for (int field = 0; field < FIELDS_PER_RECORD; field++) {
+			if (end + 4 > buffer.limit()) {
+				return -1;
+			}
+			int length = buffer.getInt((int) end);
+			if (length < 0) {
+				throw new IllegalArgumentException("corrupt record at window offset " + offset);
+			}
+			end += 4L + length;
+		}
+		return end > buffer.limit() ? -1 : (int) (end - offset);
+	}
+
+	/*
+	 * The records that end within one mapped part of the file.
+	 */
+	private class Window extends RecursiveAction {
+
+		private final ByteBuffer buffer;
+		private final int firstRecord;
+		private final int[] offsets;
+		private final int recordCount;
+		private final int length;
+		private final boolean[] valid;
+
+		Window(ByteBuffer buffer, int firstRecord) {
+			this.buffer = buffer;
+			this.firstRecord = firstRecord;
+
+			int[] offsets = new int[64];
+			int recordCount = 0;
+			int offset = 0;
+			int recordLength;
+			while ((recordLength = getRecordLength(buffer, offset)) >= 0) {
+				if (recordCount == offsets.length) {
+					offsets = Arrays.copyOf(offsets, recordCount * 2);
+				}
+				offsets[recordCount++] = offset;
+				offset += recordLength;
+			}
+
+			this.offsets = offsets;
+			this.recordCount = recordCount;
+			this.length = offset;
+			this.valid = new boolean[recordCount];
+		}
+
+		@Override
+		protected void compute() {
+			invokeAll(new Records(0, recordCount));
+		}
+
+		void collect(BitSet result) {
+			join();
+			for (int record = 0; record < recordCount; record++) {
+				if (valid[record]) {
+					result.set(firstRecord + record);
+				}
+			}
+		}
+
+		private class Records extends RecursiveAction {
+			private final int from;
+			private final int to;
+
+			Records(int from, int to) {
+				this.from = from;
+				this.to = to;
+			}
+
+			@Override
+			protected void compute() {
+				if (to - from > RECORDS_PER_TASK) {
+					int middle = (from + to) >>> 1;
+					invokeAll(new Records(from, middle), new Records(middle, to));
+					return;
+				}
+
+				for (int record = from; record < to; record++) {
+					valid[record] = verifyRecord(buffer, offsets[record]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The outcome of {@link #verify(Path)}: one bit per record, set when both
+	 * its identity and address signatures are valid.
+	 */
+	public static class Result {
+
+		private final BitSet valid;
+		private final int recordCount;
+		private final long nanos;
+
+		Result(BitSet valid, int recordCount, long nanos) {
+			this.valid = valid;
+			this.recordCount = recordCount;
+			this.nanos = nanos;
+		}
+
+		public int getRecordCount() {
+			return recordCount;
+		}
+
+		public int getValidCount() {
+			return valid.cardinality();
+		}
+
+		/**
+		 * @param record the index of the record in the file, starting at 0
+		 */
+		public boolean isValid(int record) {
+			return valid.get(record);
+		}
+
+		public double getRecordsPerSecond() {
+			return nanos == 0 ? 0 : recordCount * 1e9 / nanos;
+		}
+
+		/**
+		 * Writes the result as a bitmap of (record count + 7) / 8 bytes. Record
+		 * n is bit n % 8 (least significant first) of byte n / 8.
+		 */
+		public void writeBitmap(OutputStream out) throws IOException {
+			out.write(Arrays.copyOf(valid.toByteArray(), (recordCount + 7) / 8));
+		}
+	}
+}
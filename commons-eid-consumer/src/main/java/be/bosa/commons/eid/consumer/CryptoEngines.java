@@ -0,0 +1,72 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.consumer;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-thread Signature, MessageDigest and CertificateFactory instances, so the
+ * providers are only looked up once per thread and algorithm. Callers must
+ * not hold on to an engine across calls that may use it again.
+ */
+final class CryptoEngines {
+
+	private static final ThreadLocal<Map<String, Signature>> SIGNATURES = ThreadLocal.withInitial(HashMap::new);
+	private static final ThreadLocal<Map<String, MessageDigest>> MESSAGE_DIGESTS = ThreadLocal.withInitial(HashMap::new);
+	private static final ThreadLocal<CertificateFactory> CERTIFICATE_FACTORY = new ThreadLocal<>();
+
+	private CryptoEngines() {
+	}
+
+	static Signature getSignature(String signatureAlgorithm) throws NoSuchAlgorithmException {
+		Map<String, Signature> signatures = SIGNATURES.get();
+		Signature signature = signatures.get(signatureAlgorithm);
+		if (signature == null) {
+			signature = Signature.getInstance(signatureAlgorithm);
+			signatures.put(signatureAlgorithm, signature);
+		}
+		return signature;
+	}
+
+	static MessageDigest getMessageDigest(String digestAlgorithm) throws NoSuchAlgorithmException {
+		Map<String, MessageDigest> messageDigests = MESSAGE_DIGESTS.get();
+		MessageDigest messageDigest = messageDigests.get(digestAlgorithm);
+		if (messageDigest == null) {
+			messageDigest = MessageDigest.getInstance(digestAlgorithm);
+			messageDigests.put(digestAlgorithm, messageDigest);
+		} else {
+			messageDigest.reset();
+		}
+		return messageDigest;
+	}
+
+	static CertificateFactory getCertificateFactory() throws CertificateException {
+		CertificateFactory certificateFactory = CERTIFICATE_FACTORY.get();
+		if (certificateFactory == null) {
+			certificateFactory = CertificateFactory.getInstance("X.509");
+			CERTIFICATE_FACTORY.set(certificateFactory);
+		}
+		return certificateFactory;
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.consumer;
+
+import be.bosa.commons.eid.consumer.tlv.ChipNumberDataConvertor;
+import be.bosa.commons.eid.consumer.tlv.DataConvertorException;
+import be.bosa.commons.eid.consumer.tlv.DateOfBirthDataConvertor;
+import be.bosa.commons.eid.consumer.tlv.DocumentTypeConvertor;
+import be.bosa.commons.eid.consumer.tlv.GenderDataConvertor;
+import be.bosa.commons.eid.consumer.tlv.SpecialOrganisationConvertor;
+import be.bosa.commons.eid.consumer.tlv.SpecialStatusConvertor;
+import be.bosa.commons.eid.consumer.tlv.TlvParser;
+import be.bosa.commons.eid.consumer.tlv.ValidityDateDataConvertor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * An immutable view on an eID identity file, for callers that only need a
+ * few of its fields: each field is decoded when first asked for, instead of
+ * all of them up front as {@link TlvParser} does for {@link Identity}. Dates
+ * are given as LocalDate.
+ *
+ * @see AddressView
+ */
+public final class IdentityView extends TlvFileView {
+
+	// the tags of the identity file, as annotated in Identity
+	private static final int CARD_NUMBER = 1;
+	private static final int CHIP_NUMBER = 2;
+	private static final int CARD_VALIDITY_DATE_BEGIN = 3;
+	private static final int CARD_VALIDITY_DATE_END = 4;
+	private static final int CARD_DELIVERY_MUNICIPALITY = 5;
+	private static final int NATIONAL_NUMBER = 6;
+	private static final int NAME = 7;
+	private static final int FIRST_NAME = 8;
+	private static final int MIDDLE_NAME = 9;
+	private static final int NATIONALITY = 10;
+	private static final int PLACE_OF_BIRTH = 11;
+	private static final int DATE_OF_BIRTH = 12;
+	private static final int GENDER = 13;
+	private static final int NOBLE_CONDITION = 14;
+	private static final int DOCUMENT_TYPE = 15;
+	private static final int SPECIAL_STATUS = 16;
+	private static final int PHOTO_DIGEST = 17;
+	private static final int DUPLICATE = 18;
+	private static final int SPECIAL_ORGANISATION = 19;
+	private static final int MEMBER_OF_FAMILY = 20;
+
+	private static final ChipNumberDataConvertor CHIP_NUMBER_CONVERTOR = new ChipNumberDataConvertor();
+	private static final ValidityDateDataConvertor VALIDITY_DATE_CONVERTOR = new ValidityDateDataConvertor();
+	private static final DateOfBirthDataConvertor DATE_OF_BIRTH_CONVERTOR = new DateOfBirthDataConvertor();
+	private static final GenderDataConvertor GENDER_CONVERTOR = new GenderDataConvertor();
+	private static final DocumentTypeConvertor DOCUMENT_TYPE_CONVERTOR = new DocumentTypeConvertor();
+	private static final SpecialStatusConvertor SPECIAL_STATUS_CONVERTOR = new SpecialStatusConvertor();
+	private static final SpecialOrganisationConvertor SPECIAL_ORGANISATION_CONVERTOR = new SpecialOrganisationConvertor();
+
+	/**
+	 * A view decoding the fields of the identity file lazily.
+	 */
+	public IdentityView(byte[] identityFile) {
+		this(identityFile, false);
+	}
+
+	/**
+	 * @param identityFile the identity file, which is copied
+	 * @param eager        true to decode all fields now, false to decode each
+	 *                     on first access
+	 */
+	public IdentityView(byte[] identityFile, boolean eager) {
+		super(identityFile, MEMBER_OF_FAMILY, eager);
+	}
+
+	@Override
+	Object decode(int tag, byte[] file, int offset, int length) throws DataConvertorException {
+		switch (tag) {
+			case CHIP_NUMBER:
+				return CHIP_NUMBER_CONVERTOR.convert(file, offset, length);
+			case CARD_VALIDITY_DATE_BEGIN:
+			case CARD_VALIDITY_DATE_END:
+				return VALIDITY_DATE_CONVERTOR.toLocalDate(file, offset, length);
+			case DATE_OF_BIRTH:
+				return DATE_OF_BIRTH_CONVERTOR.toLocalDate(file, offset, length);
+			case GENDER:
+				return GENDER_CONVERTOR.convert(file, offset, length);
+			case DOCUMENT_TYPE:
+				return DOCUMENT_TYPE_CONVERTOR.convert(file, offset, length);
+			case SPECIAL_STATUS:
+				return SPECIAL_STATUS_CONVERTOR.convert(file, offset, length);
+			case SPECIAL_ORGANISATION:
+				return SPECIAL_ORGANISATION_CONVERTOR.convert(file, offset, length);
+			case PHOTO_DIGEST:
+			case MEMBER_OF_FAMILY:
+				// not memoised: a copy is returned, or only the presence counts
+				return null;
+			default:
+				return new String(file, offset, length, StandardCharsets.UTF_8);
+		}
+	}
+
+	public String getCardNumber() {
+		return (String) get(CARD_NUMBER);
+	}
+
+	public String getChipNumber() {
+		return (String) get(CHIP_NUMBER);
+	}
+
+	public LocalDate getCardValidityDateBegin() {
+		return (LocalDate) get(CARD_VALIDITY_DATE_BEGIN);
+	}
+
+	public LocalDate getCardValidityDateEnd() {
+		return (LocalDate) get(CARD_VALIDITY_DATE_END);
+	}
+
+	public String getCardDeliveryMunicipality() {
+		return (String) get(CARD_DELIVERY_MUNICIPALITY);
+	}
+
+	public String getNationalNumber() {
+		return (String) get(NATIONAL_NUMBER);
+	}
+
+	public String getName() {
+		return (String) get(NAME);
+	}
+
+	public String getFirstName() {
+		return (String) get(FIRST_NAME);
+	}
+
+	public String getMiddleName() {
+		return (String) get(MIDDLE_NAME);
+	}
+
+	public String getNationality() {
+		return (String) get(NATIONALITY);
+	}
+
+	public String getPlaceOfBirth() {
+		return (String) get(PLACE_OF_BIRTH);
+	}
+
+	public LocalDate getDateOfBirth() {
+		return (LocalDate) get(DATE_OF_BIRTH);
+	}
+
+	public Gender getGender() {
+		return (Gender) get(GENDER);
+	}
+
+	public String getNobleCondition() {
+		return (String) get(NOBLE_CONDITION);
+	}
+
+	public DocumentType getDocumentType() {
+		return (DocumentType) get(DOCUMENT_TYPE);
+	}
+
+	public SpecialStatus getSpecialStatus() {
+		return (SpecialStatus) get(SPECIAL_STATUS);
+	}
+
+	/**
+	 * @return a copy of the photo digest
+	 */
+	public byte[] getPhotoDigest() {
+		return getBytes(PHOTO_DIGEST);
+	}
+
+	public String getDuplicate() {
+		return (String) get(DUPLICATE);
+	}
+
+	public SpecialOrganisation getSpecialOrganisation() {
+		return (SpecialOrganisation) get(SPECIAL_ORGANISATION);
+	}
+
+	public boolean isMemberOfFamily() {
+		return has(MEMBER_OF_FAMILY);
+	}
+
+	/**
+	 * @return the identity file parsed into a new Identity
+	 */
+	public Identity toIdentity() {
+		return TlvParser.parse(getData(), Identity.class);
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.consumer;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of decoded certificates, meant for the handful of distinct
+ * RRN certificates that sign all identity and address files. Entries are
+ * keyed by the SHA-256 digest of the encoded certificate; when the cache is
+ * full, the least recently used entry is evicted.
+ * <p>
+ * Thread-safe. Besides {@link BeIDIntegrity}, a BeIDCard can use it as its
+ * certificate decoder: {@code beIDCard.setCertificateDecoder(cache::getCertificate)}.
+ */
+public class RRNCertificateCache {
+
+	private static final int DEFAULT_MAXIMUM_SIZE = 16;
+
+	private final Map<ByteBuffer, Entry> entries;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	/**
+	 * A cache of at most 16 certificates.
+	 */
+	public RRNCertificateCache() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+
+	/**
+	 * @param maximumSize the number of certificates to keep
+	 */
+	public RRNCertificateCache(int maximumSize) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("maximumSize must be positive");
+		}
+
+		this.entries = new LinkedHashMap<ByteBuffer, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Entry> eldest) {
+				return size() > maximumSize;
+			}
+		};
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+	}
+
+	/**
+	 * @param encodedCertificate the DER-encoded certificate
+	 * @return the decoded certificate, with its public key and signature algorithm
+	 * @throws CertificateException when the encoding is invalid
+	 */
+	public Entry get(byte[] encodedCertificate) throws CertificateException {
+		return get(encodedCertificate, null);
+	}
+
+	/**
+	 * @param certificate an already decoded certificate, cached as is when it
+	 *                    is not in the cache yet
+	 * @return the entry for the certificate, with its public key and signature
+	 * algorithm
+	 * @throws CertificateException when the certificate cannot be encoded
+	 */
+	public Entry get(X509Certificate certificate) throws CertificateException {
+		return get(certificate.getEncoded(), certificate);
+	}
+
+	private Entry get(byte[] encodedCertificate, X509Certificate certificate) throws CertificateException {
+		ByteBuffer key;
+		try {
+			key = ByteBuffer.wrap(CryptoEngines.getMessageDigest("SHA-256").digest(encodedCertificate));
+		} catch (NoSuchAlgorithmException e) {
+			throw new CertificateException("SHA-256 not available", e);
+		}
+
+		Entry entry;
+		synchronized (entries) {
+			entry = entries.get(key);
+		}
+		if (entry != null) {
+			hits.incrementAndGet();
+			return entry;
+		}
+
+		misses.incrementAndGet();
+		if (certificate == null) {
+			certificate = (X509Certificate) CryptoEngines.getCertificateFactory()
+					.generateCertificate(new ByteArrayInputStream(encodedCertificate));
+		}
+		entry = new Entry(certificate);
+		synchronized (entries) {
+			entries.put(key, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * @param encodedCertificate the DER-encoded certificate
+	 * @return the decoded certificate
+	 * @throws CertificateException when the encoding is invalid
+	 */
+	public X509Certificate getCertificate(byte[] encodedCertificate) throws CertificateException {
+		return get(encodedCertificate).getCertificate();
+	}
+
+	/**
+	 * @return the number of certificates currently cached
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the fraction of lookups served from the cache, 0 before any lookup
+	 */
+	public double getHitRate() {
+		long hitCount = hits.get();
+		long lookups = hitCount + misses.get();
+		return lookups == 0 ? 0 : (double) hitCount / lookups;
+	}
+
+	/**
+	 * A decoded certificate, with what verifying a signature needs from it.
+	 */
+	public static class Entry {
+
+		private final X509Certificate certificate;
+		private final PublicKey publicKey;
+		private final String signatureAlgorithm;
+
+		Entry(X509Certificate certificate) {
+			this.certificate = certificate;
+			this.publicKey = certificate.getPublicKey();
+			this.signatureAlgorithm = certificate.getSigAlgName();
+		}
+
+		public X509Certificate getCertificate() {
+			return certificate;
+		}
+
+		public PublicKey getPublicKey() {
+			return publicKey;
+		}
+
+		public String getSignatureAlgorithm() {
+			return signatureAlgorithm;
+		}
+	}
+}
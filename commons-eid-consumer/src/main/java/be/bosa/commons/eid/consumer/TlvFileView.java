@@ -0,0 +1,118 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.consumer;
+
+import be.bosa.commons.eid.consumer.tlv.DataConvertorException;
+import be.bosa.commons.eid.consumer.tlv.TlvReader;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Base of the immutable views on TLV files. The file is indexed once, on
+ * construction; a field is only decoded when it is first asked for, after
+ * which it is kept. In eager mode all fields are decoded right away.
+ * <p>
+ * Decoded values are immutable, so they are memoised without locking: two
+ * threads asking for the same field at once may both decode it.
+ */
+abstract class TlvFileView {
+
+	private static final Object ABSENT = new Object();
+
+	private final byte[] file;
+	private final int[] offsets;
+	private final int[] lengths;
+	private final Object[] values;
+
+	TlvFileView(byte[] file, int maxTag, boolean eager) {
+		this.file = file.clone();
+		this.offsets = new int[maxTag + 1];
+		this.lengths = new int[maxTag + 1];
+		this.values = new Object[maxTag + 1];
+		Arrays.fill(offsets, -1);
+
+		try {
+			TlvReader reader = new TlvReader(this.file);
+			int position = 0;
+			while (reader.next()) {
+				int tag = reader.getTag();
+				int valueOffset = position + reader.getHeaderLength();
+				position = valueOffset + reader.getLength();
+				if (0 == tag || tag > maxTag) {
+					continue;
+				}
+				if (-1 != offsets[tag]) {
+					throw new IllegalArgumentException("duplicate tag: " + tag);
+				}
+				offsets[tag] = valueOffset;
+				lengths[tag] = reader.getLength();
+			}
+		} catch (IOException | RuntimeException e) {
+			throw new RuntimeException("error parsing file: " + getClass().getName(), e);
+		}
+
+		if (eager) {
+			for (int tag = 1; tag <= maxTag; tag++) {
+				get(tag);
+			}
+		}
+	}
+
+	/**
+	 * Decodes the value of a tag. The result must be immutable.
+	 */
+	abstract Object decode(int tag, byte[] file, int offset, int length) throws DataConvertorException;
+
+	final Object get(int tag) {
+		Object value = values[tag];
+		if (null == value) {
+			value = ABSENT;
+			if (has(tag)) {
+				try {
+					Object decodedValue = decode(tag, file, offsets[tag], lengths[tag]);
+					if (null != decodedValue) {
+						value = decodedValue;
+					}
+				} catch (DataConvertorException e) {
+					throw new RuntimeException("error parsing tag " + tag + " of file: " + getClass().getName(), e);
+				}
+			}
+			values[tag] = value;
+		}
+		return ABSENT == value ? null : value;
+	}
+
+	final boolean has(int tag) {
+		return -1 != offsets[tag];
+	}
+
+	/**
+	 * @return a copy of the value of a tag, or null if it is absent
+	 */
+	final byte[] getBytes(int tag) {
+		return has(tag) ? Arrays.copyOfRange(file, offsets[tag], offsets[tag] + lengths[tag]) : null;
+	}
+
+	/**
+	 * @return a copy of the whole file
+	 */
+	public byte[] getData() {
+		return file.clone();
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.consumer;
+
+import java.security.cert.X509Certificate;
+
+/**
+ * The identity, address and photo of an eID card, as returned by
+ * {@link BeIDIntegrity#verifyAll}, after all of them passed integrity
+ * verification against the same RRN certificate. The bundle is immutable:
+ * identity and address come as views on the verified files.
+ */
+public final class VerifiedBundle {
+
+	private final IdentityView identity;
+	private final AddressView address;
+	private final byte[] photo;
+	private final X509Certificate rrnCertificate;
+
+	// the photo is the private copy that was verified
+	VerifiedBundle(IdentityView identity, AddressView address, byte[] photo, X509Certificate rrnCertificate) {
+		this.identity = identity;
+		this.address = address;
+		this.photo = photo;
+		this.rrnCertificate = rrnCertificate;
+	}
+
+	/**
+	 * @return the identity; {@link IdentityView#toIdentity()} gives a mutable
+	 * copy
+	 */
+	public IdentityView getIdentity() {
+		return identity;
+	}
+
+	/**
+	 * @return the address; {@link AddressView#toAddress()} gives a mutable
+	 * copy
+	 */
+	public AddressView getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return a copy of the photo, or null if none was verified
+	 */
+	public byte[] getPhoto() {
+		return null == photo ? null : photo.clone();
+	}
+
+	public X509Certificate getRrnCertificate() {
+		return rrnCertificate;
+	}
+}
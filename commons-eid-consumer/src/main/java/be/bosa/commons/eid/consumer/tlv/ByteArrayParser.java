@@ -17,17 +17,37 @@
 
 package be.bosa.commons.eid.consumer.tlv;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Byte Array Fields Offset/Length Parser supports extraction of byte array
  * slices, unsigned 8 and 16-bit values from byte array integers
+ * <p>
+ * The annotations of each class are only inspected the first time it is
+ * parsed.
  * 
  * @author Frank Marien
  */
 public class ByteArrayParser {
 
+	private static final ClassValue<ParsePlan> PARSE_PLANS = new ClassValue<ParsePlan>() {
+		@Override
+		protected ParsePlan computeValue(Class<?> baClass) {
+			try {
+				return new ParsePlan(baClass);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalArgumentException("cannot parse into " + baClass.getName(), e);
+			}
+		}
+	};
+
 	private ByteArrayParser() {
 	}
 
@@ -36,43 +56,127 @@ public class ByteArrayParser {
 	 * parameter.
 	 */
 	public static <T> T parse(byte[] file, Class<T> baClass) {
-		T t;
 		try {
-			t = parseThrowing(file, baClass);
-		} catch (Exception ex) {
+			ParsePlan plan = PARSE_PLANS.get(baClass);
+			plan.checkBounds(file, 0);
+			return baClass.cast(plan.parse(file, 0));
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable ex) {
 			throw new RuntimeException("error parsing file: " + baClass.getName(), ex);
 		}
-		return t;
 	}
 
-	private static <T> T parseThrowing(byte[] data, Class<T> baClass) throws InstantiationException, IllegalAccessException {
-		Field[] fields = baClass.getDeclaredFields();
+	/**
+	 * Parses records stored back-to-back in one array, such as card data
+	 * collected from many cards, each recordLength bytes long.
+	 *
+	 * @return one parsed object per record
+	 */
+	public static <T> List<T> parseAll(byte[] data, int recordLength, Class<T> baClass) {
+		if (recordLength <= 0 || data.length % recordLength != 0) {
+			throw new IllegalArgumentException("data is not a whole number of " + recordLength + " byte records");
+		}
+
+		try {
+			ParsePlan plan = PARSE_PLANS.get(baClass);
+			List<T> records = new ArrayList<>(data.length / recordLength);
+			if (data.length > 0) {
+				if (recordLength < plan.span) {
+					throw new IllegalArgumentException("records are shorter than " + plan.span + " bytes");
+				}
+				plan.checkBounds(data, data.length - recordLength);
+			}
+			for (int offset = 0; offset < data.length; offset += recordLength) {
+				records.add(baClass.cast(plan.parse(data, offset)));
+			}
+			return records;
+		} catch (Error | IllegalArgumentException e) {
+			throw e;
+		} catch (Throwable ex) {
+			throw new RuntimeException("error parsing file: " + baClass.getName(), ex);
+		}
+	}
+
+	/*
+	 * How to fill out the fields of a class, worked out once per class. Only
+	 * byte array fields and int fields of 1 or 2 bytes are set, others are
+	 * ignored.
+	 */
+	private static class ParsePlan {
+
+		private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+		private static final MethodType BYTES_SETTER_TYPE = MethodType.methodType(void.class, Object.class, byte[].class);
+		private static final MethodType INT_SETTER_TYPE = MethodType.methodType(void.class, Object.class, int.class);
+
+		private final MethodHandle constructor;
+		private final FieldPlan[] fields;
+		private final int span;
+
+		ParsePlan(Class<?> baClass) throws ReflectiveOperationException {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			Constructor<?> baConstructor = baClass.getDeclaredConstructor();
+			baConstructor.setAccessible(true);
+			this.constructor = lookup.unreflectConstructor(baConstructor).asType(CONSTRUCTOR_TYPE);
+
+			List<FieldPlan> fields = new ArrayList<>();
+			int span = 0;
+			for (Field field : baClass.getDeclaredFields()) {
+				ByteArrayField baFieldAnnotation = field.getAnnotation(ByteArrayField.class);
+				if (baFieldAnnotation == null) {
+					continue;
+				}
 
-		T baObject = baClass.newInstance();
-		for (Field field : fields) {
-			ByteArrayField baFieldAnnotation = field.getAnnotation(ByteArrayField.class);
-			if (baFieldAnnotation != null) {
 				int offset = baFieldAnnotation.offset();
 				int length = baFieldAnnotation.length();
-				if (field.getType().isArray() && field.getType().getComponentType().equals(byte.class)) {
-					byte[] byteArray = new byte[length];
-					System.arraycopy(data, offset, byteArray, 0, length);
-					field.set(baObject, byteArray);
-				} else if (field.getType().equals(int.class)) {
-					ByteBuffer buff = ByteBuffer.wrap(data);
-					switch (length) {
-						case 1 :
-							field.set(baObject, (int) buff.get(offset) & 0xff);
-							break;
-
-						case 2 :
-							field.set(baObject, (int) buff.getShort(offset) & 0xffff);
-							break;
-					}
+				boolean isByteArray = field.getType().isArray() && field.getType().getComponentType().equals(byte.class);
+				boolean isInt = field.getType().equals(int.class) && (length == 1 || length == 2);
+				if (isByteArray || isInt) {
+					field.setAccessible(true);
+					MethodHandle setter = lookup.unreflectSetter(field).asType(isByteArray ? BYTES_SETTER_TYPE : INT_SETTER_TYPE);
+					fields.add(new FieldPlan(offset, length, isByteArray, setter));
+					span = Math.max(span, offset + length);
+				}
+			}
+
+			this.fields = fields.toArray(new FieldPlan[0]);
+			this.span = span;
+		}
+
+		void checkBounds(byte[] data, int offset) {
+			if (offset + span > data.length) {
+				throw new ArrayIndexOutOfBoundsException("need " + span + " bytes at " + offset + ", have " + data.length);
+			}
+		}
+
+		Object parse(byte[] data, int offset) throws Throwable {
+			Object baObject = constructor.invokeExact();
+			for (FieldPlan field : fields) {
+				int start = offset + field.offset;
+				if (field.isByteArray) {
+					field.setter.invokeExact(baObject, Arrays.copyOfRange(data, start, start + field.length));
+				} else if (field.length == 1) {
+					field.setter.invokeExact(baObject, data[start] & 0xff);
+				} else {
+					field.setter.invokeExact(baObject, (data[start] & 0xff) << 8 | data[start + 1] & 0xff);
 				}
 			}
+			return baObject;
 		}
+	}
+
+	private static class FieldPlan {
 
-		return baObject;
+		private final int offset;
+		private final int length;
+		private final boolean isByteArray;
+		private final MethodHandle setter;
+
+		FieldPlan(int offset, int length, boolean isByteArray, MethodHandle setter) {
+			this.offset = offset;
+			this.length = length;
+			this.isByteArray = isByteArray;
+			this.setter = setter;
+		}
 	}
 }
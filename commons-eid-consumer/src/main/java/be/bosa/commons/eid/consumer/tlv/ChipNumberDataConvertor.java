@@ -25,12 +25,21 @@ package be.bosa.commons.eid.consumer.tlv;
  */
 public class ChipNumberDataConvertor implements DataConvertor<String> {
 
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
 	@Override
 	public String convert(byte[] value) {
-		StringBuilder result = new StringBuilder();
-		for (byte b : value) {
-			result.append(String.format("%02X", b));
+		return convert(value, 0, value.length);
+	}
+
+	@Override
+	public String convert(byte[] value, int offset, int length) {
+		char[] result = new char[length * 2];
+		for (int idx = 0; idx < length; idx++) {
+			int b = value[offset + idx] & 0xff;
+			result[idx * 2] = HEX_DIGITS[b >> 4];
+			result[idx * 2 + 1] = HEX_DIGITS[b & 0x0f];
 		}
-		return result.toString();
+		return new String(result);
 	}
 }
@@ -19,6 +19,10 @@ package be.bosa.commons.eid.consumer.tlv;
 
 /**
  * Interface for a data convertor component.
+ * <p>
+ * TlvParser creates one instance of each convertor class, through its
+ * no-argument constructor, and shares it between all parses on all threads. Implementations must therefore be stateless, or at
+ * least thread-safe.
  * 
  * @author Frank Cornelis
  * 
@@ -36,4 +40,24 @@ public interface DataConvertor<T> {
 	 *             in case the conversion failed.
 	 */
 	T convert(byte[] value) throws DataConvertorException;
+
+	/**
+	 * Convert a part of the given byte array to the data convertor data type.
+	 * Override this to convert without copying that part first.
+	 * 
+	 * @param value
+	 *            the byte array holding the value.
+	 * @param offset
+	 *            where the value starts in the array.
+	 * @param length
+	 *            the number of bytes of the value.
+	 * @return an object of the data convertor data type type.
+	 * @throws DataConvertorException
+	 *             in case the conversion failed.
+	 */
+	default T convert(byte[] value, int offset, int length) throws DataConvertorException {
+		byte[] part = new byte[length];
+		System.arraycopy(value, offset, part, 0, length);
+		return convert(part);
+	}
 }
\ No newline at end of file
@@ -20,11 +20,18 @@ package be.bosa.commons.eid.consumer.tlv;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.GregorianCalendar;
 
 /**
  * Convertor for eID date of birth field.
+ * <p>
+ * The field is parsed directly from its bytes, without decoding it to a
+ * String first: {@link #toLocalDate(byte[], int, int)} gives the date as a
+ * LocalDate, {@link #convert(byte[], int, int)} as the GregorianCalendar that
+ * Identity has always used.
  *
  * @author Frank Cornelis
  */
@@ -32,72 +39,171 @@ public class DateOfBirthDataConvertor implements DataConvertor<GregorianCalendar
 
 	private static final Log LOG = LogFactory.getLog(DateOfBirthDataConvertor.class);
 
+	private static final String[][] MONTHS = new String[][]{
+			new String[]{"JAN"}, new String[]{"FEV", "FEB"},
+			new String[]{"MARS", "MAAR", "MÄR"}, new String[]{"AVR", "APR"},
+			new String[]{"MAI", "MEI"}, new String[]{"JUIN", "JUN"},
+			new String[]{"JUIL", "JUL"}, new String[]{"AOUT", "AUG"},
+			new String[]{"SEPT", "SEP"}, new String[]{"OCT", "OKT"},
+			new String[]{"NOV"}, new String[]{"DEC", "DEZ"}};
+
+	/*
+	 * All month names are 3 or 4 bytes in UTF-8, so each packs into an int
+	 * that identifies it exactly. MONTH_KEYS holds them sorted, MONTH_NUMBERS
+	 * the matching month (1-12).
+	 */
+	private static final int MAX_MONTH_LENGTH = 4;
+	private static final int[] MONTH_KEYS;
+	private static final int[] MONTH_NUMBERS;
+
+	static {
+		long[] entries = new long[Arrays.stream(MONTHS).mapToInt(monthNames -> monthNames.length).sum()];
+		int entryIdx = 0;
+		for (int monthIdx = 0; monthIdx < MONTHS.length; monthIdx++) {
+			for (String monthName : MONTHS[monthIdx]) {
+				byte[] monthBytes = monthName.getBytes(StandardCharsets.UTF_8);
+				entries[entryIdx++] = (long) pack(monthBytes, 0, monthBytes.length) << 32 | (monthIdx + 1);
+			}
+		}
+		Arrays.sort(entries);
+
+		MONTH_KEYS = new int[entries.length];
+		MONTH_NUMBERS = new int[entries.length];
+		for (int idx = 0; idx < entries.length; idx++) {
+			MONTH_KEYS[idx] = (int) (entries[idx] >> 32);
+			MONTH_NUMBERS[idx] = (int) entries[idx];
+		}
+	}
+
 	@Override
 	public GregorianCalendar convert(byte[] value) throws DataConvertorException {
-		String dateOfBirthStr;
-		try {
-			dateOfBirthStr = new String(value, "UTF-8").trim();
-		} catch (UnsupportedEncodingException uex) {
-			throw new DataConvertorException("UTF-8 not supported");
+		return convert(value, 0, value.length);
+	}
+
+	@Override
+	public GregorianCalendar convert(byte[] value, int offset, int length) throws DataConvertorException {
+		LocalDate dateOfBirth = toLocalDate(value, offset, length);
+		return new GregorianCalendar(dateOfBirth.getYear(), dateOfBirth.getMonthValue() - 1, dateOfBirth.getDayOfMonth());
+	}
+
+	/**
+	 * Parses a date of birth in any of the formats found on eID cards: "DD MMM
+	 * YYYY" with French, Dutch or German month names, "DD.MMM.YYYY" or
+	 * "DD.MMM. YYYY", or only the year, in which case Jan 1st is returned.
+	 */
+	public LocalDate toLocalDate(byte[] value, int offset, int length) throws DataConvertorException {
+		int begin = offset;
+		int end = offset + length;
+		while (begin < end && (value[begin] & 0xff) <= ' ') {
+			begin++;
+		}
+		while (end > begin && (value[end - 1] & 0xff) <= ' ') {
+			end--;
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("\"" + new String(value, begin, end - begin, StandardCharsets.UTF_8) + "\"");
 		}
-		LOG.debug("\"" + dateOfBirthStr + "\"");
 
 		/*
 		 * First try to detect the German format as there are cases in which a
 		 * German format contains both dots and spaces.
 		 */
-		int spaceIdx = dateOfBirthStr.indexOf('.');
-		if (spaceIdx == -1) {
-			spaceIdx = dateOfBirthStr.indexOf(' ');
+		int separatorIdx = indexOf(value, begin, end, (byte) '.');
+		if (separatorIdx == -1) {
+			separatorIdx = indexOf(value, begin, end, (byte) ' ');
 		}
 
-		if (spaceIdx > 0) {
-			String dayStr = dateOfBirthStr.substring(0, spaceIdx);
-			LOG.debug("day: \"" + dayStr + "\"");
-			int day = Integer.parseInt(dayStr);
-			String monthStr = dateOfBirthStr.substring(spaceIdx + 1, dateOfBirthStr.length() - 4 - 1);
-			if (monthStr.endsWith(".")) {
-				monthStr = monthStr.substring(0, monthStr.length() - 1);
+		if (separatorIdx > begin) {
+			int monthBegin = separatorIdx + 1;
+			int monthEnd = end - 4 - 1;
+			if (monthEnd < monthBegin) {
+				throw unsupportedFormat(value, begin, end);
+			}
+			if (monthEnd > monthBegin && value[monthEnd - 1] == '.') {
+				monthEnd--;
+			}
+
+			int day = parseDigits(value, begin, separatorIdx);
+			int month = toMonth(value, monthBegin, monthEnd);
+			int year = parseDigits(value, end - 4, end);
+			if (day < 0 || year < 0) {
+				throw unsupportedFormat(value, begin, end);
 			}
-			LOG.debug("month: \"" + monthStr + "\"");
-			String yearStr = dateOfBirthStr.substring(dateOfBirthStr.length() - 4);
-			LOG.debug("year: \"" + yearStr + "\"");
-			int year = Integer.parseInt(yearStr);
-			int month = toMonth(monthStr);
-			return new GregorianCalendar(year, month, day);
+
+			// days out of range roll over, as they did with a lenient GregorianCalendar
+			return LocalDate.of(year, month, 1).plusDays(day - 1);
 		}
 
-		if (dateOfBirthStr.length() == 4) {
+		int year = parseDigits(value, begin, end);
+		if (end - begin == 4 && year >= 0) {
 			/*
 			 * "case II2b2". Only a birth year is given
 			 *
 			 * there's no way of representing "missing" fields via
 			 * GregorianCalendar, so we set Jan 1st
 			 */
-			return new GregorianCalendar(Integer.parseInt(dateOfBirthStr), 0, 1);
+			return LocalDate.of(year, 1, 1);
 		}
 
-		throw new DataConvertorException("Unsupported Birth Date Format [" + dateOfBirthStr + "]");
+		throw unsupportedFormat(value, begin, end);
 	}
 
-	private static final String[][] MONTHS = new String[][]{
-			new String[]{"JAN"}, new String[]{"FEV", "FEB"},
-			new String[]{"MARS", "MAAR", "MÄR"}, new String[]{"AVR", "APR"},
-			new String[]{"MAI", "MEI"}, new String[]{"JUIN", "JUN"},
-			new String[]{"JUIL", "JUL"}, new String[]{"AOUT", "AUG"},
-			new String[]{"SEPT", "SEP"}, new String[]{"OCT", "OKT"},
-			new String[]{"NOV"}, new String[]{"DEC", "DEZ"}};
+	private static int indexOf(byte[] value, int begin, int end, byte b) {
+		for (int idx = begin; idx < end; idx++) {
+			if (value[idx] == b) {
+				return idx;
+			}
+		}
+		return -1;
+	}
 
-	private int toMonth(String monthStr) throws DataConvertorException {
-		monthStr = monthStr.trim();
-		for (int monthIdx = 0; monthIdx < MONTHS.length; monthIdx++) {
-			String[] monthNames = MONTHS[monthIdx];
-			for (String monthName : monthNames) {
-				if (monthName.equals(monthStr)) {
-					return monthIdx;
-				}
+	/*
+	 * Parses 1 to 4 decimal digits, returns -1 if the range holds anything
+	 * else.
+	 */
+	private static int parseDigits(byte[] value, int begin, int end) {
+		if (end - begin < 1 || end - begin > 4) {
+			return -1;
+		}
+
+		int result = 0;
+		for (int idx = begin; idx < end; idx++) {
+			int digit = value[idx] - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
 			}
+			result = result * 10 + digit;
+		}
+		return result;
+	}
+
+	private static int toMonth(byte[] value, int begin, int end) throws DataConvertorException {
+		while (begin < end && (value[begin] & 0xff) <= ' ') {
+			begin++;
 		}
-		throw new DataConvertorException("unknown month: " + monthStr);
+		while (end > begin && (value[end - 1] & 0xff) <= ' ') {
+			end--;
+		}
+
+		if (end - begin <= MAX_MONTH_LENGTH) {
+			int monthIdx = Arrays.binarySearch(MONTH_KEYS, pack(value, begin, end));
+			if (monthIdx >= 0) {
+				return MONTH_NUMBERS[monthIdx];
+			}
+		}
+		throw new DataConvertorException("unknown month: " + new String(value, begin, end - begin, StandardCharsets.UTF_8));
+	}
+
+	private static int pack(byte[] value, int begin, int end) {
+		int key = 0;
+		for (int idx = begin; idx < end; idx++) {
+			key = key << 8 | value[idx] & 0xff;
+		}
+		return key;
+	}
+
+	private static DataConvertorException unsupportedFormat(byte[] value, int begin, int end) {
+		return new DataConvertorException("Unsupported Birth Date Format ["
+				+ new String(value, begin, end - begin, StandardCharsets.UTF_8) + "]");
 	}
 }
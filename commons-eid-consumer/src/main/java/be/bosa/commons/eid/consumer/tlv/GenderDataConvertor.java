@@ -29,7 +29,12 @@ public class GenderDataConvertor implements DataConvertor<Gender> {
 
 	@Override
 	public Gender convert(byte[] value) throws DataConvertorException {
-		String genderStr = new String(value);
+		return convert(value, 0, value.length);
+	}
+
+	@Override
+	public Gender convert(byte[] value, int offset, int length) throws DataConvertorException {
+		String genderStr = new String(value, offset, length);
 		if ("M".equals(genderStr)) {
 			return Gender.MALE;
 		}
@@ -21,7 +21,7 @@ import be.bosa.commons.eid.consumer.SpecialOrganisation;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Data convertor for special organisation eID identity field.
@@ -38,12 +38,13 @@ public class SpecialOrganisationConvertor implements DataConvertor<SpecialOrgani
 			return SpecialOrganisation.UNSPECIFIED;
 		}
 
-		try {
-			String key = new String(value, "UTF-8");
-			LOG.debug("key: \"" + key + "\"");
-			return SpecialOrganisation.toSpecialOrganisation(key);
-		} catch (final UnsupportedEncodingException uex) {
-			throw new DataConvertorException("string error: " + uex.getMessage());
-		}
+		return convert(value, 0, value.length);
+	}
+
+	@Override
+	public SpecialOrganisation convert(byte[] value, int offset, int length) {
+		String key = new String(value, offset, length, StandardCharsets.UTF_8);
+		LOG.debug("key: \"" + key + "\"");
+		return SpecialOrganisation.toSpecialOrganisation(key);
 	}
 }
@@ -29,7 +29,12 @@ public class SpecialStatusConvertor implements DataConvertor<SpecialStatus> {
 
 	@Override
 	public SpecialStatus convert(byte[] value) {
-		String strValue = new String(value);
+		return convert(value, 0, value.length);
+	}
+
+	@Override
+	public SpecialStatus convert(byte[] value, int offset, int length) {
+		String strValue = new String(value, offset, length);
 		return SpecialStatus.toSpecialStatus(strValue);
 	}
 }
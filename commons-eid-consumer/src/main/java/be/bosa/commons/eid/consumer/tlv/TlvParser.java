@@ -20,14 +20,31 @@ package be.bosa.commons.eid.consumer.tlv;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.io.UnsupportedEncodingException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * Tag-Length-Value parser. The TLV-format is used in the eID card for encoding
  * of the identity and address files.
+ * <p>
+ * The annotations of each TLV class are only inspected the first time it is
+ * parsed. DataConvertor instances are shared between parses, and thus between
+ * threads. Values are decoded straight from the file; only byte array fields
+ * get a copy of their part of it.
  * 
  * @author Frank Cornelis
  * 
@@ -36,6 +53,17 @@ public class TlvParser {
 
 	private static final Log LOG = LogFactory.getLog(TlvParser.class);
 
+	private static final ClassValue<ParsePlan> PARSE_PLANS = new ClassValue<ParsePlan>() {
+		@Override
+		protected ParsePlan computeValue(Class<?> tlvClass) {
+			try {
+				return new ParsePlan(tlvClass);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalArgumentException("cannot parse into " + tlvClass.getName(), e);
+			}
+		}
+	};
+
 	private TlvParser() {
 	}
 
@@ -45,85 +73,239 @@ public class TlvParser {
 	 */
 	public static <T> T parse(byte[] file, Class<T> tlvClass) {
 		try {
-			return parseThrowing(file, tlvClass);
-		} catch (Exception ex) {
+			ParsePlan plan = PARSE_PLANS.get(tlvClass);
+			Object tlvObject = plan.newInstance(file);
+			TlvReader reader = new TlvReader(file);
+			while (reader.next()) {
+				plan.set(tlvObject, reader);
+			}
+			return tlvClass.cast(tlvObject);
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable ex) {
 			throw new RuntimeException("error parsing file: " + tlvClass.getName(), ex);
 		}
 	}
 
-	private static byte[] copy(byte[] source, int idx, int count) {
-		byte[] result = new byte[count];
-		System.arraycopy(source, idx, result, 0, count);
-		return result;
+	/**
+	 * Parses a sequence of files stored back-to-back, such as identity files
+	 * archived in one blob, one file at a time. Within a file the tags
+	 * ascend, so a file is taken to end where a tag is not greater than the
+	 * one before it. Zero bytes between entries are padding, however many there
+	 * are, and stay with the file before them.
+	 *
+	 * @return an iterator over the parsed files. Its methods throw an
+	 * UncheckedIOException when reading fails.
+	 */
+	public static <T> Iterator<T> iterator(TlvReader reader, Class<T> tlvClass) {
+		return new TlvIterator<>(reader, tlvClass);
 	}
 
-	private static <T> T parseThrowing(byte[] file, Class<T> tlvClass)
-			throws InstantiationException, IllegalAccessException, DataConvertorException, UnsupportedEncodingException {
-		Field[] fields = tlvClass.getDeclaredFields();
-		Map<Integer, Field> tlvFields = new HashMap<>();
-		T tlvObject = tlvClass.newInstance();
-		
-		for (Field field : fields) {
-			TlvField tlvFieldAnnotation = field.getAnnotation(TlvField.class);
-			if (tlvFieldAnnotation != null) {
-				int tagId = tlvFieldAnnotation.value();
-				if (tlvFields.containsKey(tagId)) {
-					throw new IllegalArgumentException("TLV field duplicate: " + tagId);
+	private static class TlvIterator<T> implements Iterator<T> {
+
+		private final TlvReader reader;
+		private final Class<T> tlvClass;
+		private final ParsePlan plan;
+		private boolean entryPending;
+		private boolean endOfInput;
+
+		TlvIterator(TlvReader reader, Class<T> tlvClass) {
+			this.reader = reader;
+			this.tlvClass = tlvClass;
+			this.plan = PARSE_PLANS.get(tlvClass);
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (!entryPending && !endOfInput) {
+				entryPending = readEntry();
+				endOfInput = !entryPending;
+			}
+			return entryPending;
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			ByteArrayOutputStream file = new ByteArrayOutputStream();
+			List<int[]> entries = new ArrayList<>();
+			try {
+				int previousTag = 0;
+				do {
+					if (reader.getTag() != 0) {
+						if (reader.getTag() <= previousTag) {
+							break;
+						}
+						previousTag = reader.getTag();
+					}
+					int valueOffset = file.size() + reader.getHeaderLength();
+					reader.copyEntry(file);
+					entries.add(new int[]{reader.getTag(), valueOffset, reader.getLength()});
+					entryPending = readEntry();
+				} while (entryPending);
+				endOfInput = !entryPending;
+
+				byte[] fileBytes = file.toByteArray();
+				Object tlvObject = plan.newInstance(fileBytes);
+				for (int[] entry : entries) {
+					plan.set(tlvObject, entry[0], fileBytes, entry[1], entry[2]);
 				}
-				tlvFields.put(tagId, field);
+				return tlvClass.cast(tlvObject);
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable ex) {
+				throw new RuntimeException("error parsing file: " + tlvClass.getName(), ex);
 			}
-			OriginalData originalDataAnnotation = field.getAnnotation(OriginalData.class);
-			if (originalDataAnnotation != null) {
-				field.setAccessible(true);
-				field.set(tlvObject, file);
+		}
+
+		private boolean readEntry() {
+			try {
+				return reader.next(true);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	private enum FieldKind {
+		CONVERTED, STRING, BOOLEAN, BYTES, UNSUPPORTED
+	}
+
+	/*
+	 * What to do with each tag of a TLV class, worked out once per class.
+	 * Tags are the (signed) first byte of each TLV entry, so fields with other
+	 * tag values can never be set and are left out.
+	 */
+	private static class ParsePlan {
+
+		private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+		private final MethodHandle constructor;
+		private final MethodHandle[] originalDataSetters;
+		private final FieldPlan[] fields;
+
+		ParsePlan(Class<?> tlvClass) throws ReflectiveOperationException {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			Constructor<?> tlvConstructor = tlvClass.getDeclaredConstructor();
+			tlvConstructor.setAccessible(true);
+			this.constructor = lookup.unreflectConstructor(tlvConstructor).asType(CONSTRUCTOR_TYPE);
+
+			List<MethodHandle> originalDataSetters = new ArrayList<>();
+			FieldPlan[] fields = new FieldPlan[Byte.MAX_VALUE + 1];
+			int maxTag = 0;
+			Set<Integer> tags = new HashSet<>();
+			for (Field field : tlvClass.getDeclaredFields()) {
+				TlvField tlvFieldAnnotation = field.getAnnotation(TlvField.class);
+				if (tlvFieldAnnotation != null) {
+					int tagId = tlvFieldAnnotation.value();
+					if (!tags.add(tagId)) {
+						throw new IllegalArgumentException("TLV field duplicate: " + tagId);
+					}
+					if (tagId > 0 && tagId < fields.length) {
+						fields[tagId] = new FieldPlan(lookup, field);
+						maxTag = Math.max(maxTag, tagId);
+					}
+				}
+				OriginalData originalDataAnnotation = field.getAnnotation(OriginalData.class);
+				if (originalDataAnnotation != null) {
+					field.setAccessible(true);
+					originalDataSetters.add(lookup.unreflectSetter(field).asType(FieldPlan.SETTER_TYPE));
+				}
 			}
+
+			this.originalDataSetters = originalDataSetters.toArray(new MethodHandle[0]);
+			this.fields = new FieldPlan[maxTag + 1];
+			System.arraycopy(fields, 0, this.fields, 0, maxTag + 1);
 		}
 
-		int idx = 0;
-		while (idx < file.length - 1) {
-			int tag = file[idx];
-			idx++;
-			byte lengthByte = file[idx];
-			int length = lengthByte & 0x7f;
-			while ((lengthByte & 0x80) == 0x80) {
-				idx++;
-				lengthByte = file[idx];
-				length = (length << 7) + (lengthByte & 0x7f);
+		Object newInstance(byte[] file) throws Throwable {
+			Object tlvObject = constructor.invokeExact();
+			for (MethodHandle originalDataSetter : originalDataSetters) {
+				originalDataSetter.invokeExact(tlvObject, (Object) file);
 			}
-			idx++;
+			return tlvObject;
+		}
+
+		void set(Object tlvObject, TlvReader reader) throws Throwable {
+			set(tlvObject, reader.getTag(), reader.valueArray(), reader.valueArrayOffset(), reader.getLength());
+		}
+
+		void set(Object tlvObject, int tag, byte[] value, int offset, int length) throws Throwable {
 			if (0 == tag) {
-				idx += length;
-				continue;
+				return;
 			}
-			if (tlvFields.containsKey(tag)) {
-				Field tlvField = tlvFields.get(tag);
-				Class<?> tlvType = tlvField.getType();
-				ConvertData convertDataAnnotation = tlvField.getAnnotation(ConvertData.class);
-				byte[] tlvValue = copy(file, idx, length);
-				Object fieldValue;
-				if (null != convertDataAnnotation) {
-					Class<? extends DataConvertor<?>> dataConvertorClass = convertDataAnnotation.value();
-					DataConvertor<?> dataConvertor = dataConvertorClass.newInstance();
-					fieldValue = dataConvertor.convert(tlvValue);
-				} else if (String.class == tlvType) {
-					fieldValue = new String(tlvValue, "UTF-8");
-				} else if (Boolean.TYPE == tlvType) {
+
+			FieldPlan fieldPlan = tag < fields.length ? fields[tag] : null;
+			if (fieldPlan == null) {
+				LOG.debug("unknown tag: " + tag + ", length: " + length);
+				return;
+			}
+
+			Object fieldValue;
+			switch (fieldPlan.kind) {
+				case CONVERTED:
+					fieldValue = fieldPlan.dataConvertor.convert(value, offset, length);
+					break;
+				case STRING:
+					fieldValue = new String(value, offset, length, StandardCharsets.UTF_8);
+					break;
+				case BOOLEAN:
 					fieldValue = true;
+					break;
+				case BYTES:
+					// a byte array field is public and mutable, and the value may sit in a reused reader buffer,
+					// so it gets its own copy; IdentityView and AddressView are the lazy alternative
+					fieldValue = Arrays.copyOfRange(value, offset, offset + length);
+					break;
+				default:
+					throw new IllegalArgumentException("unsupported field type: " + fieldPlan.field.getType().getName());
+			}
+			if (fieldPlan.getter != null && fieldPlan.getter.invokeExact(tlvObject) != null) {
+				throw new RuntimeException("field was already set: " + fieldPlan.field.getName());
+			}
+			fieldPlan.setter.invokeExact(tlvObject, fieldValue);
+		}
+	}
+
+	private static class FieldPlan {
+
+		private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+		private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+		private final Field field;
+		private final FieldKind kind;
+		private final DataConvertor<?> dataConvertor;
+		private final MethodHandle setter;
+		private final MethodHandle getter;
+
+		FieldPlan(MethodHandles.Lookup lookup, Field field) throws ReflectiveOperationException {
+			this.field = field;
+			field.setAccessible(true);
+
+			Class<?> tlvType = field.getType();
+			ConvertData convertDataAnnotation = field.getAnnotation(ConvertData.class);
+			if (null != convertDataAnnotation) {
+				Class<? extends DataConvertor<?>> dataConvertorClass = convertDataAnnotation.value();
+				this.kind = FieldKind.CONVERTED;
+				this.dataConvertor = dataConvertorClass.newInstance();
+			} else {
+				this.dataConvertor = null;
+				if (String.class == tlvType) {
+					this.kind = FieldKind.STRING;
+				} else if (Boolean.TYPE == tlvType) {
+					this.kind = FieldKind.BOOLEAN;
 				} else if (tlvType.isArray() && Byte.TYPE == tlvType.getComponentType()) {
-					fieldValue = tlvValue;
+					this.kind = FieldKind.BYTES;
 				} else {
-					throw new IllegalArgumentException("unsupported field type: " + tlvType.getName());
+					this.kind = FieldKind.UNSUPPORTED;
 				}
-				if (tlvField.get(tlvObject) != null && !tlvField.getType().isPrimitive()) {
-					throw new RuntimeException("field was already set: " + tlvField.getName());
-				}
-				tlvField.setAccessible(true);
-				tlvField.set(tlvObject, fieldValue);
-			} else {
-				LOG.debug("unknown tag: " + (tag & 0xff) + ", length: " + length);
 			}
-			idx += length;
+
+			this.setter = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+			this.getter = tlvType.isPrimitive() ? null : lookup.unreflectGetter(field).asType(GETTER_TYPE);
 		}
-		return tlvObject;
 	}
 }
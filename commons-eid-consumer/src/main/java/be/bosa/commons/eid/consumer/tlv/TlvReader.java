@@ -0,0 +1,262 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.consumer.tlv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Pull-style reader of Tag-Length-Value entries, as found in the identity and
+ * address files of the eID card. Each call to {@link #next()} moves to the
+ * following entry, whose tag, length and value can then be inspected.
+ * <p>
+ * Reads from a byte array or a ByteBuffer (a MappedByteBuffer of an archive
+ * file, for example) without copying, or from an InputStream or
+ * ReadableByteChannel through a buffer that holds one entry at a time. The
+ * value of an entry is only valid until the next call to next().
+ */
+public class TlvReader {
+
+	private static final int INITIAL_BUFFER_SIZE = 4096;
+
+	private final ReadableByteChannel channel;
+	private ByteBuffer buffer;
+	private boolean endOfStream;
+	private byte[] scratch;
+
+	private int entryStart;
+	private int valueStart;
+	private int tag;
+	private int length;
+
+	/**
+	 * A TlvReader over a complete file.
+	 */
+	public TlvReader(byte[] file) {
+		this.channel = null;
+		this.buffer = ByteBuffer.wrap(file);
+		this.endOfStream = true;
+	}
+
+	/**
+	 * A TlvReader over the remaining bytes of the given buffer. The buffer's
+	 * position is left alone.
+	 */
+	public TlvReader(ByteBuffer buffer) {
+		this.channel = null;
+		this.buffer = buffer.slice();
+		this.endOfStream = true;
+	}
+
+	/**
+	 * A TlvReader over the given stream. The stream is not closed.
+	 */
+	public TlvReader(InputStream inputStream) {
+		this(Channels.newChannel(inputStream));
+	}
+
+	/**
+	 * A TlvReader over the given channel. The channel is not closed.
+	 */
+	public TlvReader(ReadableByteChannel channel) {
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+		this.buffer.limit(0);
+	}
+
+	/**
+	 * Move to the next entry. A single trailing byte, too short to hold an
+	 * entry, is ignored.
+	 *
+	 * @return false when there are no more entries
+	 * @throws EOFException when the input ends in the middle of an entry
+	 */
+	public boolean next() throws IOException {
+		return next(false);
+	}
+
+	/*
+	 * With zeroPadding, a run of zero bytes, the padding behind a card file,
+	 * is taken as one entry with tag 0, no value and the whole run as its
+	 * header, whatever its length. Without it, tag 0 is an entry like any
+	 * other, as in the middleware's .eid files.
+	 */
+	boolean next(boolean zeroPadding) throws IOException {
+		entryStart = valueStart + length;
+		valueStart = entryStart;
+		tag = 0;
+		length = 0;
+		if (!fill(1)) {
+			return false;
+		}
+
+		// offsets are relative to entryStart, which moves when fill() compacts the buffer
+		int headerLength = 0;
+		if (zeroPadding && buffer.get(entryStart) == 0) {
+			do {
+				headerLength++;
+			} while (fill(headerLength + 1) && buffer.get(entryStart + headerLength) == 0);
+			valueStart = entryStart + headerLength;
+			return true;
+		}
+
+		if (!fill(2)) {
+			return false;
+		}
+
+		tag = buffer.get(entryStart) & 0xff;
+		headerLength++;
+		byte lengthByte = buffer.get(entryStart + headerLength);
+		int entryLength = lengthByte & 0x7f;
+		while ((lengthByte & 0x80) == 0x80) {
+			headerLength++;
+			if (!fill(headerLength + 1)) {
+				throw new EOFException("TLV length truncated");
+			}
+			lengthByte = buffer.get(entryStart + headerLength);
+			entryLength = (entryLength << 7) + (lengthByte & 0x7f);
+		}
+		headerLength++;
+
+		if (!fill(headerLength + entryLength)) {
+			throw new EOFException("TLV value truncated, tag: " + tag + ", length: " + entryLength);
+		}
+		valueStart = entryStart + headerLength;
+		length = entryLength;
+		return true;
+	}
+
+	/**
+	 * @return the tag of the current entry, 0 to 255
+	 */
+	public int getTag() {
+		return tag;
+	}
+
+	/**
+	 * @return the length of the value of the current entry
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the number of bytes taken by the tag and length of the current
+	 * entry
+	 */
+	public int getHeaderLength() {
+		return valueStart - entryStart;
+	}
+
+	/**
+	 * @return a read-only view on the value of the current entry
+	 */
+	public ByteBuffer getValue() {
+		ByteBuffer value = buffer.duplicate();
+		value.limit(valueStart + length);
+		value.position(valueStart);
+		return value.slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return a copy of the value of the current entry
+	 */
+	public byte[] getValueBytes() {
+		byte[] value = new byte[length];
+		System.arraycopy(valueArray(), valueArrayOffset(), value, 0, length);
+		return value;
+	}
+
+	/*
+	 * The array holding the value of the current entry at valueArrayOffset(),
+	 * copied to a scratch array for buffers without one.
+	 */
+	byte[] valueArray() {
+		if (buffer.hasArray()) {
+			return buffer.array();
+		}
+
+		if (scratch == null || scratch.length < length) {
+			scratch = new byte[Math.max(length, INITIAL_BUFFER_SIZE)];
+		}
+		ByteBuffer value = buffer.duplicate();
+		value.position(valueStart);
+		value.get(scratch, 0, length);
+		return scratch;
+	}
+
+	int valueArrayOffset() {
+		return buffer.hasArray() ? buffer.arrayOffset() + valueStart : 0;
+	}
+
+	/*
+	 * Append the complete current entry, tag and length included.
+	 */
+	void copyEntry(ByteArrayOutputStream out) {
+		int entryLength = valueStart + length - entryStart;
+		if (buffer.hasArray()) {
+			out.write(buffer.array(), buffer.arrayOffset() + entryStart, entryLength);
+		} else {
+			for (int idx = entryStart; idx < entryStart + entryLength; idx++) {
+				out.write(buffer.get(idx));
+			}
+		}
+	}
+
+	/*
+	 * Make sure count bytes from the start of the current entry are in the
+	 * buffer, reading more from the channel if needed.
+	 */
+	private boolean fill(int count) throws IOException {
+		while (buffer.limit() - entryStart < count) {
+			if (endOfStream) {
+				return false;
+			}
+
+			if (entryStart > 0 || buffer.capacity() < count) {
+				// move the current entry to the front, growing the buffer when it can't hold it
+				buffer.position(entryStart);
+				if (buffer.capacity() < count) {
+					ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(count, buffer.capacity() * 2));
+					newBuffer.put(buffer);
+					buffer = newBuffer;
+				} else {
+					buffer.compact();
+				}
+				buffer.flip();
+				valueStart -= entryStart;
+				entryStart = 0;
+			}
+
+			buffer.position(buffer.limit());
+			buffer.limit(buffer.capacity());
+			int read = channel.read(buffer);
+			buffer.limit(buffer.position());
+			if (read < 0) {
+				endOfStream = true;
+			}
+		}
+
+		return true;
+	}
+}
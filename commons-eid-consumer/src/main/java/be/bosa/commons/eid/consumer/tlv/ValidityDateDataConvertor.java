@@ -17,6 +17,8 @@
 
 package be.bosa.commons.eid.consumer.tlv;
 
+import java.time.DateTimeException;
+import java.time.LocalDate;
 import java.util.GregorianCalendar;
 
 /**
@@ -29,11 +31,45 @@ public class ValidityDateDataConvertor implements DataConvertor<GregorianCalenda
 
 	@Override
 	public GregorianCalendar convert(byte[] value) {
-		String dateStr = new String(value);
+		return convert(value, 0, value.length);
+	}
+
+	@Override
+	public GregorianCalendar convert(byte[] value, int offset, int length) {
+		String dateStr = new String(value, offset, length);
 		int day = Integer.parseInt(dateStr.substring(0, 2));
 		int month = Integer.parseInt(dateStr.substring(3, 5));
 		int year = Integer.parseInt(dateStr.substring(6));
 
 		return new GregorianCalendar(year, month - 1, day);
 	}
+
+	/**
+	 * Parses a validity date, formatted as "DD.MM.YYYY", straight from its
+	 * bytes.
+	 */
+	public LocalDate toLocalDate(byte[] value, int offset, int length) throws DataConvertorException {
+		if (length < 7 || value[offset + 2] != '.' || value[offset + 5] != '.') {
+			throw new DataConvertorException("invalid validity date");
+		}
+
+		try {
+			return LocalDate.of(parseDigits(value, offset + 6, offset + length),
+					parseDigits(value, offset + 3, offset + 5), parseDigits(value, offset, offset + 2));
+		} catch (DateTimeException e) {
+			throw new DataConvertorException("invalid validity date: " + e.getMessage());
+		}
+	}
+
+	private static int parseDigits(byte[] value, int begin, int end) throws DataConvertorException {
+		int result = 0;
+		for (int idx = begin; idx < end; idx++) {
+			int digit = value[idx] - '0';
+			if (digit < 0 || digit > 9 || result > 99999) {
+				throw new DataConvertorException("invalid validity date");
+			}
+			result = result * 10 + digit;
+		}
+		return result;
+	}
 }
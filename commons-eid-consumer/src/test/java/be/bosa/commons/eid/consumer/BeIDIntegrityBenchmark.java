@@ -0,0 +1,103 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.consumer;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Identity (with photo) plus address verifications per second by one shared
+ * BeIDIntegrity, from 1, 4 and 16 threads. The RRN certificate is loaded from
+ * its encoding on each invocation, as a web service receiving it would.
+ * <p>
+ * Run the main method on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeIDIntegrityBenchmark {
+
+	private BeIDIntegrity beIDIntegrity;
+	private byte[] identityFile;
+	private byte[] identitySignatureFile;
+	private byte[] addressFile;
+	private byte[] addressSignatureFile;
+	private byte[] photo;
+	private byte[] rrnCertFile;
+
+	@Setup
+	public void setUp() throws IOException {
+		beIDIntegrity = new BeIDIntegrity();
+		identityFile = read("/test-identity.tlv");
+		identitySignatureFile = read("/test-identity-sign.der");
+		addressFile = read("/test-address.tlv");
+		addressSignatureFile = read("/test-address-sign.der");
+		photo = read("/test-photo.jpg");
+		rrnCertFile = read("/test-rrn-cert.der");
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Address verify1() throws NoSuchAlgorithmException {
+		return verify();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Address verify4() throws NoSuchAlgorithmException {
+		return verify();
+	}
+
+	@Benchmark
+	@Threads(16)
+	public Address verify16() throws NoSuchAlgorithmException {
+		return verify();
+	}
+
+	private Address verify() throws NoSuchAlgorithmException {
+		X509Certificate rrnCertificate = beIDIntegrity.loadCertificate(rrnCertFile);
+		beIDIntegrity.getVerifiedIdentity(identityFile, identitySignatureFile, photo, rrnCertificate);
+		return beIDIntegrity.getVerifiedAddress(addressFile, identitySignatureFile, addressSignatureFile, rrnCertificate);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(BeIDIntegrityBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	private static byte[] read(String resource) throws IOException {
+		return IOUtils.toByteArray(BeIDIntegrityBenchmark.class.getResourceAsStream(resource));
+	}
+}
@@ -24,6 +24,7 @@ import org.junit.Test;
 
 import java.security.cert.X509Certificate;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
@@ -145,4 +146,78 @@ public class BeIDIntegrityTest {
 			// expected
 		}
 	}
+
+	@Test
+	public void testVerifyAll() throws Exception {
+		byte[] identityFile = IOUtils.toByteArray(BeIDIntegrityTest.class.getResourceAsStream("/test-identity.tlv"));
+		byte[] identitySignatureFile = IOUtils.toByteArray(BeIDIntegrityTest.class.getResourceAsStream("/test-identity-sign.der"));
+		byte[] addressFile = IOUtils.toByteArray(BeIDIntegrityTest.class.getResourceAsStream("/test-address.tlv"));
+		byte[] addressSignatureFile = IOUtils.toByteArray(BeIDIntegrityTest.class.getResourceAsStream("/test-address-sign.der"));
+		byte[] rrnCertFile = IOUtils.toByteArray(BeIDIntegrityTest.class.getResourceAsStream("/test-rrn-cert.der"));
+		byte[] photoData = IOUtils.toByteArray(BeIDIntegrityTest.class.getResourceAsStream("/test-photo.jpg"));
+		BeIDIntegrity beIDIntegrity = new BeIDIntegrity();
+
+		X509Certificate rrnCert = beIDIntegrity.loadCertificate(rrnCertFile);
+		VerifiedBundle verifiedBundle = beIDIntegrity.verifyAll(identityFile, identitySignatureFile,
+				addressFile, addressSignatureFile, photoData, rrnCert);
+
+		assertNotNull(verifiedBundle.getIdentity().getNationalNumber());
+		assertEquals("2000", verifiedBundle.getAddress().getZip());
+		assertArrayEquals(photoData, verifiedBundle.getPhoto());
+		assertEquals(rrnCert, verifiedBundle.getRrnCertificate());
+
+		// the bundle keeps what was verified
+		byte[] verifiedPhoto = photoData.clone();
+		photoData[0] = 0;
+		addressFile[0] = 123;
+		assertArrayEquals(verifiedPhoto, verifiedBundle.getPhoto());
+		assertEquals("2000", verifiedBundle.getAddress().getZip());
+	}
+
+	@Test
+	public void testVerifyAllAddressCorruption() throws Exception {
+		byte[] identityFile = IOUtils.toByteArray(BeIDIntegrityTest.class.getResourceAsStream("/test-identity.tlv"));
+		byte[] identitySignatureFile = IOUtils.toByteArray(BeIDIntegrityTest.class.getResourceAsStream("/test-identity-sign.der"));
+		byte[] addressFile = IOUtils.toByteArray(BeIDIntegrityTest.class.getResourceAsStream("/test-address.tlv"));
+		byte[] addressSignatureFile = IOUtils.toByteArray(BeIDIntegrityTest.class.getResourceAsStream("/test-address-sign.der"));
+		byte[] rrnCertFile = IOUtils.toByteArray(BeIDIntegrityTest.class.getResourceAsStream("/test-rrn-cert.der"));
+		BeIDIntegrity beIDIntegrity = new BeIDIntegrity();
+
+		// setup: corrupt address
+		addressFile[0] = 123;
+
+		X509Certificate rrnCert = beIDIntegrity.loadCertificate(rrnCertFile);
+
+		try {
+			beIDIntegrity.verifyAll(identityFile, identitySignatureFile,
+					addressFile, addressSignatureFile, null, rrnCert, Runnable::run);
+			fail();
+		} catch (SecurityException e) {
+			assertEquals("address integrity error", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testVerifyAllPhotoCorruption() throws Exception {
+		byte[] identityFile = IOUtils.toByteArray(BeIDIntegrityTest.class.getResourceAsStream("/test-identity.tlv"));
+		byte[] identitySignatureFile = IOUtils.toByteArray(BeIDIntegrityTest.class.getResourceAsStream("/test-identity-sign.der"));
+		byte[] addressFile = IOUtils.toByteArray(BeIDIntegrityTest.class.getResourceAsStream("/test-address.tlv"));
+		byte[] addressSignatureFile = IOUtils.toByteArray(BeIDIntegrityTest.class.getResourceAsStream("/test-address-sign.der"));
+		byte[] rrnCertFile = IOUtils.toByteArray(BeIDIntegrityTest.class.getResourceAsStream("/test-rrn-cert.der"));
+		byte[] photoData = IOUtils.toByteArray(BeIDIntegrityTest.class.getResourceAsStream("/test-photo.jpg"));
+		BeIDIntegrity beIDIntegrity = new BeIDIntegrity();
+
+		// setup: corrupt photo
+		photoData[0] = 0;
+
+		X509Certificate rrnCert = beIDIntegrity.loadCertificate(rrnCertFile);
+
+		try {
+			beIDIntegrity.verifyAll(identityFile, identitySignatureFile,
+					addressFile, addressSignatureFile, photoData, rrnCert);
+			fail();
+		} catch (SecurityException e) {
+			assertEquals("photo digest mismatch", e.getMessage());
+		}
+	}
 }
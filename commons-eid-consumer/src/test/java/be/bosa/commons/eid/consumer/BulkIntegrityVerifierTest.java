@@ -0,0 +1,161 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.consumer;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BulkIntegrityVerifierTest {
+
+	private static final Log LOG = LogFactory.getLog(BulkIntegrityVerifierTest.class);
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private byte[] identityFile;
+	private byte[] identitySignatureFile;
+	private byte[] addressFile;
+	private byte[] addressSignatureFile;
+	private byte[] rrnCertFile;
+
+	@Before
+	public void setUp() throws IOException {
+		identityFile = read("/test-identity.tlv");
+		identitySignatureFile = read("/test-identity-sign.der");
+		addressFile = read("/test-address.tlv");
+		addressSignatureFile = read("/test-address-sign.der");
+		rrnCertFile = read("/test-rrn-cert.der");
+	}
+
+	@Test
+	public void testVerify() throws Exception {
+		Path recordFile = writeRecords(1000);
+
+		// small windows, so records straddle window boundaries
+		BulkIntegrityVerifier verifier = new BulkIntegrityVerifier(ForkJoinPool.commonPool(), 10000);
+		BulkIntegrityVerifier.Result result = verifier.verify(recordFile);
+
+		assertEquals(1000, result.getRecordCount());
+		for (int record = 0; record < 1000; record++) {
+			assertEquals("record " + record, !isCorrupted(record), result.isValid(record));
+		}
+		assertEquals(1000 - 143 - 1, result.getValidCount());
+
+		ByteArrayOutputStream bitmap = new ByteArrayOutputStream();
+		result.writeBitmap(bitmap);
+		assertEquals(125, bitmap.size());
+		assertEquals(0b01110110, bitmap.toByteArray()[0]);
+	}
+
+	@Test
+	public void testRecordLargerThanWindow() throws Exception {
+		Path recordFile = writeRecords(3);
+
+		BulkIntegrityVerifier.Result result = new BulkIntegrityVerifier(ForkJoinPool.commonPool(), 100).verify(recordFile);
+
+		assertEquals(3, result.getRecordCount());
+		assertFalse(result.isValid(0));
+		assertTrue(result.isValid(1));
+		assertTrue(result.isValid(2));
+	}
+
+	@Test
+	public void testSharedCertificateCache() throws Exception {
+		Path recordFile = writeRecords(100);
+		RRNCertificateCache certificateCache = new RRNCertificateCache();
+		new BeIDIntegrity(certificateCache).loadCertificate(rrnCertFile);
+
+		new BulkIntegrityVerifier(ForkJoinPool.commonPool(), certificateCache).verify(recordFile);
+
+		assertEquals(1, certificateCache.size());
+		assertEquals(1, certificateCache.getMissCount());
+	}
+
+	@Test
+	public void testTruncatedFile() throws Exception {
+		Path recordFile = writeRecords(3);
+		try (RandomAccessFile file = new RandomAccessFile(recordFile.toFile(), "rw")) {
+			file.setLength(file.length() - 1);
+		}
+
+		try {
+			new BulkIntegrityVerifier().verify(recordFile);
+			fail();
+		} catch (EOFException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testThroughput() throws Exception {
+		Path recordFile = writeRecords(5000);
+
+		BulkIntegrityVerifier.Result result = new BulkIntegrityVerifier().verify(recordFile);
+
+		assertEquals(5000, result.getRecordCount());
+		LOG.debug("records/s: " + Math.round(result.getRecordsPerSecond()));
+	}
+
+	/*
+	 * Every 7th record has a corrupted identity, every 7th + 3 a corrupted
+	 * address.
+	 */
+	private static boolean isCorrupted(int record) {
+		return record % 7 == 0 || record % 7 == 3 && record < 7;
+	}
+
+	private Path writeRecords(int count) throws IOException {
+		Path recordFile = temporaryFolder.newFile().toPath();
+		try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(recordFile))) {
+			for (int record = 0; record < count; record++) {
+				byte[] identity = identityFile.clone();
+				byte[] address = addressFile.clone();
+				if (record % 7 == 0) {
+					identity[10]++;
+				} else if (record % 7 == 3 && record < 7) {
+					address[10]++;
+				}
+				BulkIntegrityVerifier.writeRecord(out, identity, identitySignatureFile, address, addressSignatureFile, rrnCertFile);
+			}
+		}
+		return recordFile;
+	}
+
+	private static byte[] read(String resource) throws IOException {
+		return IOUtils.toByteArray(BulkIntegrityVerifierTest.class.getResourceAsStream(resource));
+	}
+}
@@ -21,6 +21,7 @@ import be.bosa.commons.eid.consumer.tlv.ByteArrayParser;
 import org.junit.Test;
 
 import java.math.BigInteger;
+import java.util.List;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
@@ -63,4 +64,34 @@ public class ByteArrayParserTest {
 		assertFalse(cardData.isLocked());
 	}
 
+	@Test
+	public void testParseAll() {
+		byte[] cardDataBytes = new BigInteger("534c494e33660013930d2061c018063fd0004801011100020001010f", 16).toByteArray();
+		int recordLength = cardDataBytes.length + 4;
+		byte[] records = new byte[3 * recordLength];
+		for (int record = 0; record < 3; record++) {
+			System.arraycopy(cardDataBytes, 0, records, record * recordLength, cardDataBytes.length);
+			records[record * recordLength + 27] = (byte) record;
+		}
+
+		List<CardData> cardDatas = ByteArrayParser.parseAll(records, recordLength, CardData.class);
+
+		assertEquals(3, cardDatas.size());
+		for (int record = 0; record < 3; record++) {
+			CardData cardData = cardDatas.get(record);
+			assertEquals(record, cardData.applicationLifeCycle);
+			assertEquals(21324, cardData.axaltoReservedNumber);
+			assertArrayEquals(ByteArrayParser.parse(cardDataBytes, CardData.class).chipSerialNumber, cardData.chipSerialNumber);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseAllPartialRecord() {
+		ByteArrayParser.parseAll(new byte[30], 28, CardData.class);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testParseTooShort() {
+		ByteArrayParser.parse(new byte[27], CardData.class);
+	}
 }
@@ -0,0 +1,118 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.consumer;
+
+import be.bosa.commons.eid.consumer.tlv.TlvParser;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class IdentityViewTest {
+
+	private static final String[] IDENTITY_FILES = {"/id-alice.tlv", "/id-alice-2.tlv", "/id-foreigner.tlv",
+			"/test-identity.tlv", "/white-cane.tlv", "/yellow-cane.tlv", "/extended-minority.tlv", "/h-card.tlv",
+			"/duplicate-02.tlv"};
+
+	@Test
+	public void lazyAndEagerViewsMatchParsedIdentity() throws Exception {
+		for (String identityFileName : IDENTITY_FILES) {
+			byte[] identityFile = IOUtils.toByteArray(IdentityViewTest.class.getResourceAsStream(identityFileName));
+			Identity identity = TlvParser.parse(identityFile, Identity.class);
+
+			assertIdentityEquals(identity, new IdentityView(identityFile));
+			assertIdentityEquals(identity, new IdentityView(identityFile, true));
+		}
+	}
+
+	@Test
+	public void viewIsNotAffectedByChangesToTheFile() throws Exception {
+		byte[] identityFile = IOUtils.toByteArray(IdentityViewTest.class.getResourceAsStream("/id-alice.tlv"));
+		IdentityView identityView = new IdentityView(identityFile);
+		String nationalNumber = TlvParser.parse(identityFile, Identity.class).getNationalNumber();
+
+		identityFile[identityFile.length - 1]++;
+		identityView.getData()[0]++;
+		identityView.getPhotoDigest()[0]++;
+
+		assertEquals(nationalNumber, identityView.getNationalNumber());
+		assertArrayEquals(identityView.getData(), identityView.toIdentity().getData());
+		assertArrayEquals(identityView.getPhotoDigest(), identityView.toIdentity().getPhotoDigest());
+	}
+
+	@Test
+	public void addressView() throws Exception {
+		byte[] addressFile = IOUtils.toByteArray(IdentityViewTest.class.getResourceAsStream("/address-alice.tlv"));
+		Address address = TlvParser.parse(addressFile, Address.class);
+
+		for (AddressView addressView : new AddressView[]{new AddressView(addressFile), new AddressView(addressFile, true)}) {
+			assertEquals(address.getStreetAndNumber(), addressView.getStreetAndNumber());
+			assertEquals(address.getZip(), addressView.getZip());
+			assertEquals(address.getMunicipality(), addressView.getMunicipality());
+			assertArrayEquals(address.getData(), addressView.toAddress().getData());
+		}
+	}
+
+	@Test
+	public void absentFieldsAreNull() {
+		IdentityView identityView = new IdentityView(new byte[]{6, 3, '1', '2', '3', 0, 0});
+
+		assertEquals("123", identityView.getNationalNumber());
+		assertNull(identityView.getCardNumber());
+		assertNull(identityView.getDateOfBirth());
+		assertNull(identityView.getPhotoDigest());
+	}
+
+	private static void assertIdentityEquals(Identity expected, IdentityView actual) {
+		assertEquals(expected.getCardNumber(), actual.getCardNumber());
+		assertEquals(expected.getChipNumber(), actual.getChipNumber());
+		assertEquals(toLocalDate(expected.getCardValidityDateBegin()), actual.getCardValidityDateBegin());
+		assertEquals(toLocalDate(expected.getCardValidityDateEnd()), actual.getCardValidityDateEnd());
+		assertEquals(expected.getCardDeliveryMunicipality(), actual.getCardDeliveryMunicipality());
+		assertEquals(expected.getNationalNumber(), actual.getNationalNumber());
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getFirstName(), actual.getFirstName());
+		assertEquals(expected.getMiddleName(), actual.getMiddleName());
+		assertEquals(expected.getNationality(), actual.getNationality());
+		assertEquals(expected.getPlaceOfBirth(), actual.getPlaceOfBirth());
+		assertEquals(toLocalDate(expected.getDateOfBirth()), actual.getDateOfBirth());
+		assertEquals(expected.getGender(), actual.getGender());
+		assertEquals(expected.getNobleCondition(), actual.getNobleCondition());
+		assertEquals(expected.getDocumentType(), actual.getDocumentType());
+		assertEquals(expected.getSpecialStatus(), actual.getSpecialStatus());
+		assertArrayEquals(expected.getPhotoDigest(), actual.getPhotoDigest());
+		assertEquals(expected.getDuplicate(), actual.getDuplicate());
+		assertEquals(expected.getSpecialOrganisation(), actual.getSpecialOrganisation());
+		assertEquals(expected.isMemberOfFamily(), actual.isMemberOfFamily());
+
+		Identity converted = actual.toIdentity();
+		assertEquals(expected.getDateOfBirth(), converted.getDateOfBirth());
+		assertArrayEquals(expected.getData(), converted.getData());
+	}
+
+	private static LocalDate toLocalDate(GregorianCalendar calendar) {
+		return null == calendar ? null
+				: LocalDate.of(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH));
+	}
+}
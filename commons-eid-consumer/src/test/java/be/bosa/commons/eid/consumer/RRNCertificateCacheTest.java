@@ -0,0 +1,88 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.consumer;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class RRNCertificateCacheTest {
+
+	@Test
+	public void testCachesDecodedCertificate() throws Exception {
+		byte[] rrnCertFile = IOUtils.toByteArray(RRNCertificateCacheTest.class.getResourceAsStream("/test-rrn-cert.der"));
+		RRNCertificateCache cache = new RRNCertificateCache();
+
+		RRNCertificateCache.Entry entry = cache.get(rrnCertFile);
+		X509Certificate certificate = cache.getCertificate(rrnCertFile.clone());
+
+		assertSame(entry.getCertificate(), certificate);
+		assertEquals(certificate.getPublicKey(), entry.getPublicKey());
+		assertEquals(certificate.getSigAlgName(), entry.getSignatureAlgorithm());
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(0.5, cache.getHitRate(), 0.0);
+	}
+
+	@Test
+	public void testSharedWithBeIDIntegrity() throws Exception {
+		byte[] rrnCertFile = IOUtils.toByteArray(RRNCertificateCacheTest.class.getResourceAsStream("/test-rrn-cert.der"));
+		RRNCertificateCache cache = new RRNCertificateCache();
+
+		X509Certificate certificate = new BeIDIntegrity(cache).loadCertificate(rrnCertFile);
+
+		assertSame(certificate, new BeIDIntegrity(cache).loadCertificate(rrnCertFile));
+		assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void testVerificationUsesCachedEntry() throws Exception {
+		byte[] identityFile = IOUtils.toByteArray(RRNCertificateCacheTest.class.getResourceAsStream("/test-identity.tlv"));
+		byte[] identitySignatureFile = IOUtils.toByteArray(RRNCertificateCacheTest.class.getResourceAsStream("/test-identity-sign.der"));
+		byte[] rrnCertFile = IOUtils.toByteArray(RRNCertificateCacheTest.class.getResourceAsStream("/test-rrn-cert.der"));
+		RRNCertificateCache cache = new RRNCertificateCache();
+		BeIDIntegrity beIDIntegrity = new BeIDIntegrity(cache);
+		X509Certificate certificate = beIDIntegrity.loadCertificate(rrnCertFile);
+
+		beIDIntegrity.getVerifiedIdentity(identityFile, identitySignatureFile, certificate);
+		beIDIntegrity.getVerifiedIdentity(identityFile, identitySignatureFile, certificate);
+
+		assertEquals(1, cache.size());
+		assertEquals(2, cache.getHitCount());
+		assertSame(cache.get(rrnCertFile), cache.get(certificate));
+	}
+
+	@Test
+	public void testInvalidCertificate() {
+		RRNCertificateCache cache = new RRNCertificateCache();
+		try {
+			cache.get(new byte[]{0x30, 0x03, 0x02, 0x01, 0x01});
+			fail();
+		} catch (CertificateException e) {
+			// expected
+		}
+		assertEquals(0, cache.size());
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.consumer.tlv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.GregorianCalendar;
+
+/**
+ * Dates of birth converted per second by DateOfBirthDataConvertor, as a
+ * LocalDate and as a GregorianCalendar, and by the String-based convertor it
+ * replaced.
+ * <p>
+ * Run the main method on the test classpath; the gc profiler reports the
+ * bytes allocated per conversion as gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateOfBirthDataConvertorBenchmark {
+
+	@Param({"22 DEZ 1972", "01.MÄR. 1971", "1984"})
+	public String dateOfBirth;
+
+	private byte[] value;
+	private DateOfBirthDataConvertor convertor;
+	private LegacyDateOfBirthDataConvertor legacyConvertor;
+
+	@Setup
+	public void setUp() {
+		value = dateOfBirth.getBytes(StandardCharsets.UTF_8);
+		convertor = new DateOfBirthDataConvertor();
+		legacyConvertor = new LegacyDateOfBirthDataConvertor();
+	}
+
+	@Benchmark
+	public LocalDate localDate() throws DataConvertorException {
+		return convertor.toLocalDate(value, 0, value.length);
+	}
+
+	@Benchmark
+	public GregorianCalendar calendar() throws DataConvertorException {
+		return convertor.convert(value);
+	}
+
+	@Benchmark
+	public GregorianCalendar legacy() throws DataConvertorException {
+		return legacyConvertor.convert(value);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(DateOfBirthDataConvertorBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.consumer.tlv;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class DateOfBirthDataConvertorTest {
+
+	private static final String[][] MONTHS = new String[][]{
+			{"JAN"}, {"FEV", "FEB"}, {"MARS", "MAAR", "MÄR"}, {"AVR", "APR"}, {"MAI", "MEI"}, {"JUIN", "JUN"},
+			{"JUIL", "JUL"}, {"AOUT", "AUG"}, {"SEPT", "SEP"}, {"OCT", "OKT"}, {"NOV"}, {"DEC", "DEZ"}};
+
+	private static final String[] FORMATS = {"%02d %s %04d", "%02d.%s.%04d", "%02d.%s. %04d", " %d %s  %04d "};
+
+	private final DateOfBirthDataConvertor convertor = new DateOfBirthDataConvertor();
+	private final LegacyDateOfBirthDataConvertor legacyConvertor = new LegacyDateOfBirthDataConvertor();
+
+	@Test
+	public void parsesAllMonthNamesAndFormats() throws Exception {
+		for (LocalDate date = LocalDate.of(1899, 12, 25); date.getYear() < 2021; date = date.plusDays(1)) {
+			for (String monthName : MONTHS[date.getMonthValue() - 1]) {
+				for (String format : FORMATS) {
+					byte[] value = String.format(format, date.getDayOfMonth(), monthName, date.getYear())
+							.getBytes(StandardCharsets.UTF_8);
+
+					assertEquals(date, convertor.toLocalDate(value, 0, value.length));
+					assertEquals(new GregorianCalendar(date.getYear(), date.getMonthValue() - 1, date.getDayOfMonth()),
+							convertor.convert(value));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void parsesValueInsideLargerArray() throws Exception {
+		byte[] value = "xx22 DEZ 1972yy".getBytes(StandardCharsets.UTF_8);
+		assertEquals(LocalDate.of(1972, 12, 22), convertor.toLocalDate(value, 2, value.length - 4));
+	}
+
+	@Test
+	public void yearOnly() throws Exception {
+		byte[] value = "1984".getBytes(StandardCharsets.UTF_8);
+		assertEquals(new GregorianCalendar(1984, Calendar.JANUARY, 1), convertor.convert(value));
+	}
+
+	@Test
+	public void rejectsUnknownMonth() {
+		byte[] value = "01 JANV 1971".getBytes(StandardCharsets.UTF_8);
+		try {
+			convertor.convert(value);
+			fail();
+		} catch (DataConvertorException e) {
+			assertEquals("unknown month: JANV", e.getMessage());
+		}
+	}
+
+	/*
+	 * Mutates valid dates at random and checks that whatever the old,
+	 * String-based convertor made of them, the new one either makes the same
+	 * of it or rejects it with a DataConvertorException. Years before the
+	 * Gregorian reform are left out: there a lenient GregorianCalendar rolls
+	 * days over Julian leap days that LocalDate doesn't have.
+	 */
+	@Test
+	public void agreesWithLegacyConvertorOnMutatedInput() throws Exception {
+		Random random = new Random(1971);
+		byte[] alphabet = "0123456789. JANMRSEVBUILOTGPCKDZÃ\u0084\t-+".getBytes(StandardCharsets.ISO_8859_1);
+
+		for (int run = 0; run < 100000; run++) {
+			LocalDate date = LocalDate.ofEpochDay(random.nextInt(50000) - 25000);
+			String[] monthNames = MONTHS[date.getMonthValue() - 1];
+			byte[] value = String.format(FORMATS[random.nextInt(FORMATS.length)], date.getDayOfMonth(),
+					monthNames[random.nextInt(monthNames.length)], date.getYear()).getBytes(StandardCharsets.UTF_8);
+			value = mutate(value, random, alphabet);
+
+			GregorianCalendar expected;
+			try {
+				expected = legacyConvertor.convert(value);
+			} catch (DataConvertorException | RuntimeException e) {
+				expected = null;
+			}
+
+			GregorianCalendar actual;
+			try {
+				actual = convertor.convert(value);
+			} catch (DataConvertorException e) {
+				continue;
+			}
+
+			if (expected == null) {
+				fail("legacy convertor rejected \"" + new String(value, StandardCharsets.UTF_8) + "\"");
+			}
+			if (expected.get(Calendar.YEAR) > 1582 && expected.get(Calendar.ERA) == GregorianCalendar.AD) {
+				assertEquals(new String(value, StandardCharsets.UTF_8), expected, actual);
+			}
+		}
+	}
+
+	private static byte[] mutate(byte[] value, Random random, byte[] alphabet) {
+		int mutations = random.nextInt(3);
+		for (int mutation = 0; mutation < mutations && value.length > 0; mutation++) {
+			int position = random.nextInt(value.length);
+			byte b = alphabet[random.nextInt(alphabet.length)];
+			switch (random.nextInt(3)) {
+				case 0:
+					value[position] = b;
+					break;
+				case 1:
+					byte[] inserted = new byte[value.length + 1];
+					System.arraycopy(value, 0, inserted, 0, position);
+					inserted[position] = b;
+					System.arraycopy(value, position, inserted, position + 1, value.length - position);
+					value = inserted;
+					break;
+				default:
+					byte[] deleted = new byte[value.length - 1];
+					System.arraycopy(value, 0, deleted, 0, position);
+					System.arraycopy(value, position + 1, deleted, position, value.length - position - 1);
+					value = deleted;
+			}
+		}
+		return value;
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.consumer.tlv;
+
+import be.bosa.commons.eid.consumer.Address;
+import be.bosa.commons.eid.consumer.Identity;
+import be.bosa.commons.eid.consumer.IdentityView;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Identity and address files parsed per second by TlvParser, and by the
+ * reflective parser it used before parse plans were cached per class, which
+ * also copied every value before decoding it. identityViewNumbers reads the
+ * two fields most callers need through a lazy IdentityView, identityViewEager
+ * decodes all fields through one.
+ * <p>
+ * Run the main method on the test classpath; the gc profiler reports the
+ * bytes allocated per parse as gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TlvParserBenchmark {
+
+	private byte[] identityFile;
+	private byte[] addressFile;
+
+	@Setup
+	public void setUp() throws IOException {
+		identityFile = IOUtils.toByteArray(TlvParserBenchmark.class.getResourceAsStream("/id-alice.tlv"));
+		addressFile = IOUtils.toByteArray(TlvParserBenchmark.class.getResourceAsStream("/address-alice.tlv"));
+	}
+
+	@Benchmark
+	public Identity identity() {
+		return TlvParser.parse(identityFile, Identity.class);
+	}
+
+	@Benchmark
+	public Identity identityReflective() throws Exception {
+		return parseReflective(identityFile, Identity.class);
+	}
+
+	@Benchmark
+	public String identityViewNumbers() {
+		IdentityView identityView = new IdentityView(identityFile);
+		return identityView.getNationalNumber() + identityView.getCardNumber();
+	}
+
+	@Benchmark
+	public IdentityView identityViewEager() {
+		return new IdentityView(identityFile, true);
+	}
+
+	@Benchmark
+	public Address address() {
+		return TlvParser.parse(addressFile, Address.class);
+	}
+
+	@Benchmark
+	public Address addressReflective() throws Exception {
+		return parseReflective(addressFile, Address.class);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(TlvParserBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+
+	/*
+	 * The former TlvParser.parseThrowing, inspecting the annotations and
+	 * creating the DataConvertors on every call.
+	 */
+	private static <T> T parseReflective(byte[] file, Class<T> tlvClass) throws Exception {
+		Field[] fields = tlvClass.getDeclaredFields();
+		Map<Integer, Field> tlvFields = new HashMap<>();
+		T tlvObject = tlvClass.newInstance();
+
+		for (Field field : fields) {
+			TlvField tlvFieldAnnotation = field.getAnnotation(TlvField.class);
+			if (tlvFieldAnnotation != null) {
+				tlvFields.put(tlvFieldAnnotation.value(), field);
+			}
+			if (field.getAnnotation(OriginalData.class) != null) {
+				field.setAccessible(true);
+				field.set(tlvObject, file);
+			}
+		}
+
+		int idx = 0;
+		while (idx < file.length - 1) {
+			int tag = file[idx];
+			idx++;
+			byte lengthByte = file[idx];
+			int length = lengthByte & 0x7f;
+			while ((lengthByte & 0x80) == 0x80) {
+				idx++;
+				lengthByte = file[idx];
+				length = (length << 7) + (lengthByte & 0x7f);
+			}
+			idx++;
+			if (0 == tag) {
+				idx += length;
+				continue;
+			}
+			if (tlvFields.containsKey(tag)) {
+				Field tlvField = tlvFields.get(tag);
+				Class<?> tlvType = tlvField.getType();
+				ConvertData convertDataAnnotation = tlvField.getAnnotation(ConvertData.class);
+				byte[] tlvValue = new byte[length];
+				System.arraycopy(file, idx, tlvValue, 0, length);
+				Object fieldValue;
+				if (null != convertDataAnnotation) {
+					fieldValue = convertDataAnnotation.value().newInstance().convert(tlvValue);
+				} else if (String.class == tlvType) {
+					fieldValue = new String(tlvValue, "UTF-8");
+				} else if (Boolean.TYPE == tlvType) {
+					fieldValue = true;
+				} else {
+					fieldValue = tlvValue;
+				}
+				tlvField.setAccessible(true);
+				tlvField.set(tlvObject, fieldValue);
+			}
+			idx += length;
+		}
+		return tlvObject;
+	}
+}
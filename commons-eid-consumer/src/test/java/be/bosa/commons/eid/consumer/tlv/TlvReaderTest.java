@@ -0,0 +1,235 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.consumer.tlv;
+
+import be.bosa.commons.eid.consumer.Address;
+import be.bosa.commons.eid.consumer.Identity;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TlvReaderTest {
+
+	private static final List<String> IDENTITY_FILES = Arrays.asList("/id-alice.tlv", "/id-alice-2.tlv", "/h-card.tlv", "/duplicate-02.tlv");
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testReadEntries() throws Exception {
+		byte[] file = new byte[]{1, 2, 0x41, 0x42, 0, 0, 100, (byte) 0x81, 0x00};
+		file = Arrays.copyOf(file, file.length + 0x80);
+
+		TlvReader reader = new TlvReader(file);
+		assertTrue(reader.next());
+		assertEquals(1, reader.getTag());
+		assertEquals(2, reader.getLength());
+		assertEquals(2, reader.getHeaderLength());
+		assertArrayEquals(new byte[]{0x41, 0x42}, reader.getValueBytes());
+		assertEquals(0x42, reader.getValue().get(1));
+
+		assertTrue(reader.next());
+		assertEquals(0, reader.getTag());
+		assertEquals(0, reader.getLength());
+
+		assertTrue(reader.next());
+		assertEquals(100, reader.getTag());
+		assertEquals(0x80, reader.getLength());
+		assertEquals(3, reader.getHeaderLength());
+
+		assertFalse(reader.next());
+	}
+
+	@Test
+	public void testReadZeroPadding() throws Exception {
+		byte[] file = new byte[]{1, 1, 0x41, 0, 0, 0, 2, 1, 0x42, 0};
+
+		TlvReader reader = new TlvReader(new OneByteAtATimeInputStream(file));
+		assertTrue(reader.next(true));
+		assertEquals(1, reader.getTag());
+
+		assertTrue(reader.next(true));
+		assertEquals(0, reader.getTag());
+		assertEquals(0, reader.getLength());
+		assertEquals(3, reader.getHeaderLength());
+
+		assertTrue(reader.next(true));
+		assertEquals(2, reader.getTag());
+		assertArrayEquals(new byte[]{0x42}, reader.getValueBytes());
+
+		assertTrue(reader.next(true));
+		assertEquals(0, reader.getTag());
+		assertEquals(1, reader.getHeaderLength());
+
+		assertFalse(reader.next(true));
+	}
+
+	@Test
+	public void testTruncatedValue() throws Exception {
+		TlvReader reader = new TlvReader(new ByteArrayInputStream(new byte[]{1, 5, 0x41}));
+		try {
+			reader.next();
+			fail();
+		} catch (EOFException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testLargeValueFromStream() throws Exception {
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		file.write(1);
+		file.write(0x81);
+		file.write(0x80);
+		file.write(0x00);
+		file.write(new byte[0x4000]);
+		file.write(2);
+		file.write(1);
+		file.write(0x7f);
+
+		TlvReader reader = new TlvReader(new OneByteAtATimeInputStream(file.toByteArray()));
+		assertTrue(reader.next());
+		assertEquals(0x4000, reader.getLength());
+		assertTrue(reader.next());
+		assertEquals(2, reader.getTag());
+		assertArrayEquals(new byte[]{0x7f}, reader.getValueBytes());
+		assertFalse(reader.next());
+	}
+
+	@Test
+	public void testIterateConcatenatedStream() throws Exception {
+		byte[] archive = concatenate(IDENTITY_FILES);
+
+		Iterator<Identity> identities = TlvParser.iterator(new TlvReader(new OneByteAtATimeInputStream(archive)), Identity.class);
+		assertIdentities(identities);
+	}
+
+	@Test
+	public void testIterateMappedFile() throws Exception {
+		File archiveFile = temporaryFolder.newFile();
+		Files.write(archiveFile.toPath(), concatenate(IDENTITY_FILES));
+
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(archiveFile, "r")) {
+			MappedByteBuffer archive = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, archiveFile.length());
+			assertIdentities(TlvParser.iterator(new TlvReader(archive), Identity.class));
+		}
+	}
+
+	@Test
+	public void testIteratePaddedAddresses() throws Exception {
+		List<String> addressFiles = Arrays.asList("/address-alice.tlv", "/test-address.tlv");
+
+		Iterator<Address> addresses = TlvParser.iterator(new TlvReader(ByteBuffer.wrap(concatenate(addressFiles))), Address.class);
+		for (String addressFile : addressFiles) {
+			assertTrue(addresses.hasNext());
+			Address address = addresses.next();
+			Address expected = TlvParser.parse(read(addressFile), Address.class);
+			assertEquals(expected.getStreetAndNumber(), address.getStreetAndNumber());
+			assertArrayEquals(expected.getData(), address.getData());
+		}
+		assertFalse(addresses.hasNext());
+	}
+
+	@Test
+	public void testIterateOddPadding() throws Exception {
+		List<String> addressFiles = Arrays.asList("/address-alice.tlv", "/test-address.tlv");
+		ByteArrayOutputStream archive = new ByteArrayOutputStream();
+		for (String addressFile : addressFiles) {
+			archive.write(trimPadding(read(addressFile)));
+			archive.write(new byte[3]);
+		}
+
+		Iterator<Address> addresses = TlvParser.iterator(new TlvReader(new OneByteAtATimeInputStream(archive.toByteArray())), Address.class);
+		for (String addressFile : addressFiles) {
+			assertTrue(addresses.hasNext());
+			Address address = addresses.next();
+			Address expected = TlvParser.parse(read(addressFile), Address.class);
+			assertEquals(expected.getStreetAndNumber(), address.getStreetAndNumber());
+			assertEquals(expected.getZip(), address.getZip());
+			assertEquals(expected.getMunicipality(), address.getMunicipality());
+			assertEquals(trimPadding(expected.getData()).length + 3, address.getData().length);
+		}
+		assertFalse(addresses.hasNext());
+	}
+
+	private void assertIdentities(Iterator<Identity> identities) throws IOException {
+		for (String identityFile : IDENTITY_FILES) {
+			assertTrue(identities.hasNext());
+			Identity identity = identities.next();
+			Identity expected = TlvParser.parse(read(identityFile), Identity.class);
+			assertEquals(expected.getNationalNumber(), identity.getNationalNumber());
+			assertEquals(expected.getDateOfBirth(), identity.getDateOfBirth());
+			assertArrayEquals(expected.getPhotoDigest(), identity.getPhotoDigest());
+			assertArrayEquals(expected.getData(), identity.getData());
+		}
+		assertFalse(identities.hasNext());
+	}
+
+	private static byte[] concatenate(List<String> resources) throws IOException {
+		ByteArrayOutputStream archive = new ByteArrayOutputStream();
+		for (String resource : resources) {
+			archive.write(read(resource));
+		}
+		return archive.toByteArray();
+	}
+
+	private static byte[] trimPadding(byte[] file) {
+		int length = file.length;
+		while (length > 0 && file[length - 1] == 0) {
+			length--;
+		}
+		return Arrays.copyOf(file, length);
+	}
+
+	private static byte[] read(String resource) throws IOException {
+		return IOUtils.toByteArray(TlvReaderTest.class.getResourceAsStream(resource));
+	}
+
+	private static class OneByteAtATimeInputStream extends FilterInputStream {
+		OneByteAtATimeInputStream(byte[] data) {
+			super(new ByteArrayInputStream(data));
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return super.read(b, off, Math.min(len, 1));
+		}
+	}
+}
@@ -26,19 +26,24 @@ import be.bosa.commons.eid.consumer.Identity;
 import be.bosa.commons.eid.consumer.text.Format;
 import be.bosa.commons.eid.consumer.tlv.TlvParser;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.text.DateFormat;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Dynamically changing dialog listing BeIDCards by photo and main identity data
@@ -50,6 +55,13 @@ import java.util.Map;
  */
 public class BeIDSelector {
 
+	private static final int IDENTITY_STAGE = 0;
+	private static final int PHOTO_STAGE = 1;
+	private static final int READ_THREADS = 8;
+
+	// shared by all selectors; runs ReadTasks in stage order
+	private static final ThreadPoolExecutor READ_EXECUTOR = createReadExecutor();
+
 	private JDialog dialog;
 	private JPanel masterPanel;
 	private DefaultListModel<ListData> listModel;
@@ -111,6 +123,11 @@ public class BeIDSelector {
 		}
 	}
 
+	/**
+	 * Cancels reading the cards, interrupting the reads in progress, and
+	 * waits for those to end, so no card is still being read when this
+	 * returns.
+	 */
 	public void stop() {
 		for (ListDataUpdater updater : updaters.values()) {
 			updater.stop();
@@ -120,6 +137,7 @@ public class BeIDSelector {
 			try {
 				updater.join();
 			} catch (InterruptedException iex) {
+				Thread.currentThread().interrupt();
 				return;
 			}
 		}
@@ -157,6 +175,17 @@ public class BeIDSelector {
 		return selectedListData.getCard();
 	}
 
+	private static ThreadPoolExecutor createReadExecutor() {
+		AtomicInteger threadNumber = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(READ_THREADS, READ_THREADS, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, "ListDataUpdater-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
 	private void initComponents(String title) {
 		try {
 			SwingUtilities.invokeAndWait(() -> {
@@ -168,6 +197,12 @@ public class BeIDSelector {
 				list.setCellRenderer(new EidListCellRenderer());
 				masterPanel.add(list);
 				dialog.add(masterPanel);
+				dialog.addWindowListener(new WindowAdapter() {
+					@Override
+					public void windowClosed(WindowEvent windowEvent) {
+						stop();
+					}
+				});
 			});
 		} catch (InterruptedException | InvocationTargetException e) {
 			throw new RuntimeException(e);
@@ -367,51 +402,65 @@ public class BeIDSelector {
 		}
 	}
 
-	private static class ListDataUpdater implements Runnable {
+	/*
+	 * Reads the identity and then the photo of one card, as two tasks on
+	 * READ_EXECUTOR. Identity tasks go before all photo tasks, so the list is
+	 * selectable as soon as all identities are in.
+	 */
+	private static class ListDataUpdater {
 		final private BeIDSelector selectionDialog;
 		final private ListData listData;
-		final private Thread worker;
+		final private PhotoDecodingService photoDecodingService;
+		final private ReadTask identityTask;
+		final private ReadTask photoTask;
 
 		public ListDataUpdater(BeIDSelector selectionDialog, ListData listData) {
 			this.selectionDialog = selectionDialog;
 			this.listData = listData;
-			this.worker = new Thread(this, "ListDataUpdater");
-			this.worker.setDaemon(true);
-			setWorkerName(null, null);
+			this.photoDecodingService = PhotoDecodingService.getInstance();
+			this.identityTask = new ReadTask(IDENTITY_STAGE, this::readIdentity);
+			this.photoTask = new ReadTask(PHOTO_STAGE, this::readPhoto);
 			this.selectionDialog.startReadingIdentity();
 		}
 
 		public void stop() {
-			worker.interrupt();
-		}
-
-		public void start() {
-			worker.start();
+			if (identityTask.cancel()) {
+				// it will never run, so never count itself out
+				selectionDialog.endReadingIdentity();
+			}
+			photoTask.cancel();
 		}
 
 		public void join() throws InterruptedException {
-			worker.join();
+			identityTask.join();
+			photoTask.join();
 		}
 
-		@Override
-		public void run() {
-			Identity identity = null;
-			setWorkerName(null, "Reading Identity");
+		public void start() {
+			READ_EXECUTOR.execute(identityTask);
+		}
 
+		private void readIdentity() {
 			try {
-				identity = TlvParser.parse(listData.getCard().readFile(FileType.Identity), Identity.class);
+				setWorkerName("Reading Identity");
+				Identity identity = TlvParser.parse(listData.getCard().readFile(FileType.Identity), Identity.class);
 				listData.setIdentity(identity);
 				selectionDialog.updateListData(listData);
-				setWorkerName(identity, "Identity Read");
 			} catch (Exception ex) {
 				listData.setError();
 				selectionDialog.updateListData(listData);
-				setWorkerName(identity, "Error Reading Identity");
 			} finally {
 				selectionDialog.endReadingIdentity();
 			}
 
-			setWorkerName(identity, "Reading Photo");
+			if (!photoTask.isCancelled()) {
+				READ_EXECUTOR.execute(photoTask);
+			}
+		}
+
+		private void readPhoto() {
+			Identity identity = listData.getIdentity();
+			setWorkerName("Reading Photo");
 
 			try {
 				listData.setPhotoSizeEstimate(FileType.Photo.getEstimatedMaxSize());
@@ -435,46 +484,108 @@ public class BeIDSelector {
 					}
 				});
 
-				byte[] photoFile = listData.getCard().readFile(FileType.Photo);
-				BufferedImage photoImage = ImageIO.read(new ByteArrayInputStream(photoFile));
+				byte[] photoDigest = identity == null ? null : identity.getPhotoDigest();
+				BufferedImage photoImage = photoDigest == null ? null : photoDecodingService.getCachedThumbnail(photoDigest);
+				if (photoImage == null) {
+					byte[] photoFile = listData.getCard().readFile(FileType.Photo);
+					photoImage = photoDecodingService.decode(photoDigest, photoFile).get();
+				}
 				listData.setPhoto(new ImageIcon(photoImage));
 				selectionDialog.updateListData(listData);
-				setWorkerName(identity, "All Done");
 			} catch (Exception ex) {
 				listData.setError();
 				selectionDialog.updateListData(listData);
-				setWorkerName(identity, "Error Reading Photo");
 			}
 		}
 
-		private void setWorkerName(Identity identity, String activity) {
-			StringBuilder builder = new StringBuilder("ListDataUpdater");
+		// the pool threads are shared, so they are named after what they do, not whose card
+		private void setWorkerName(String activity) {
+			Thread.currentThread().setName("ListDataUpdater [" + activity + "]");
+		}
 
-			if (identity != null) {
-				builder.append(" [");
-				if (identity.getFirstName() != null) {
-					builder.append(identity.getFirstName());
-					builder.append(" ");
+		public ListData getListData() {
+			return listData;
+		}
+	}
+
+	/*
+	 * A stage of a ListDataUpdater. A task cancelled before it starts never
+	 * runs its body; cancelling a running one interrupts it, and join() waits
+	 * for it to end.
+	 */
+	private static class ReadTask implements Runnable, Comparable<ReadTask> {
+		private static final AtomicLong SEQUENCE = new AtomicLong();
+
+		private final int stage;
+		private final long sequence;
+		private final Runnable body;
+		private Thread runner;
+		private boolean started;
+		private boolean cancelled;
+
+		public ReadTask(int stage, Runnable body) {
+			this.stage = stage;
+			this.sequence = SEQUENCE.incrementAndGet();
+			this.body = body;
+		}
+
+		@Override
+		public void run() {
+			Thread thread = Thread.currentThread();
+			synchronized (this) {
+				if (cancelled) {
+					return;
 				}
+				started = true;
+				runner = thread;
+			}
 
-				if (identity.getName() != null) {
-					builder.append(identity.getName());
+			String threadName = thread.getName();
+			try {
+				body.run();
+			} finally {
+				synchronized (this) {
+					runner = null;
+					notifyAll();
 				}
+				thread.setName(threadName);
+				// don't leave a late cancel() to interrupt the next task of this thread
+				Thread.interrupted();
+			}
+		}
 
-				builder.append("]");
+		/*
+		 * @return true if the body had not started, and now never will
+		 */
+		public synchronized boolean cancel() {
+			if (cancelled) {
+				return false;
 			}
 
-			if (activity != null) {
-				builder.append(" [");
-				builder.append(activity);
-				builder.append("]");
+			cancelled = true;
+			if (runner != null) {
+				runner.interrupt();
+				return false;
 			}
+			return !started;
+		}
 
-			worker.setName(builder.toString());
+		public synchronized boolean isCancelled() {
+			return cancelled;
 		}
 
-		public ListData getListData() {
-			return listData;
+		public synchronized void join() throws InterruptedException {
+			while (runner != null) {
+				wait();
+			}
+		}
+
+		@Override
+		public int compareTo(ReadTask other) {
+			if (stage != other.stage) {
+				return Integer.compare(stage, other.stage);
+			}
+			return Long.compare(sequence, other.sequence);
 		}
 	}
 
@@ -0,0 +1,210 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.dialogs;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes eID photos into thumbnails for display, on a small pool of worker
+ * threads shared by all BeIDSelectors. Photos are decoded subsampled, so
+ * only about as many pixels as will be shown are decoded. Thumbnails are kept
+ * in an LRU cache keyed by the photo digest from the identity file, so a card
+ * seen before needs neither its photo read nor decoded again. A thumbnail
+ * is only cached when the photo matches the digest it is cached under.
+ * Thumbnails are shared between callers and must not be modified.
+ */
+public class PhotoDecodingService {
+
+	private static final PhotoDecodingService INSTANCE = new PhotoDecodingService(2, 64, 140, 200);
+
+	private final ExecutorService executorService;
+	private final int maxWidth;
+	private final int maxHeight;
+	private final Map<ByteBuffer, BufferedImage> thumbnails;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	/**
+	 * @param threads   the number of photos decoded at once
+	 * @param cacheSize the number of thumbnails to keep
+	 * @param maxWidth  the width photos are shown at
+	 * @param maxHeight the height photos are shown at
+	 */
+	public PhotoDecodingService(int threads, int cacheSize, int maxWidth, int maxHeight) {
+		AtomicInteger threadNumber = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, "PhotoDecodingService-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		this.executorService = executor;
+		this.maxWidth = maxWidth;
+		this.maxHeight = maxHeight;
+		this.thumbnails = new LinkedHashMap<ByteBuffer, BufferedImage>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ByteBuffer, BufferedImage> eldest) {
+				return size() > cacheSize;
+			}
+		};
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+	}
+
+	/**
+	 * @return the service shared by all BeIDSelectors, for 140x200 thumbnails
+	 */
+	public static PhotoDecodingService getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param photoDigest the photo digest from the identity file
+	 * @return the thumbnail decoded earlier for this digest, or null
+	 */
+	public BufferedImage getCachedThumbnail(byte[] photoDigest) {
+		BufferedImage thumbnail;
+		synchronized (thumbnails) {
+			thumbnail = thumbnails.get(ByteBuffer.wrap(photoDigest));
+		}
+
+		if (thumbnail == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return thumbnail;
+	}
+
+	/**
+	 * Decodes a photo into a thumbnail on one of the worker threads, and
+	 * caches it if the photo matches the digest.
+	 *
+	 * @param photoDigest the photo digest from the identity file, or null to
+	 *                    skip caching
+	 * @param photo       the JPEG photo file
+	 * @return the thumbnail, completed exceptionally if decoding failed
+	 */
+	public CompletableFuture<BufferedImage> decode(byte[] photoDigest, byte[] photo) {
+		ByteBuffer key = photoDigest == null ? null : ByteBuffer.wrap(photoDigest.clone());
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				BufferedImage thumbnail = decodeThumbnail(photo);
+				if (key != null && matchesDigest(key.array(), photo)) {
+					synchronized (thumbnails) {
+						thumbnails.put(key, thumbnail);
+					}
+				}
+				return thumbnail;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, executorService);
+	}
+
+	public int size() {
+		synchronized (thumbnails) {
+			return thumbnails.size();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/*
+	 * The digest algorithm follows from the digest length, as in
+	 * BeIDIntegrity.
+	 */
+	private static boolean matchesDigest(byte[] photoDigest, byte[] photo) {
+		String digestAlgo;
+		switch (photoDigest.length) {
+			case 20:
+				digestAlgo = "SHA-1";
+				break;
+			case 28:
+				digestAlgo = "SHA-224";
+				break;
+			case 32:
+				digestAlgo = "SHA-256";
+				break;
+			case 48:
+				digestAlgo = "SHA-384";
+				break;
+			case 64:
+				digestAlgo = "SHA-512";
+				break;
+			default:
+				return false;
+		}
+
+		try {
+			return MessageDigest.isEqual(photoDigest, MessageDigest.getInstance(digestAlgo).digest(photo));
+		} catch (NoSuchAlgorithmException e) {
+			return false;
+		}
+	}
+
+	/*
+	 * Reads the photo at the smallest whole fraction of its size that still
+	 * covers maxWidth x maxHeight.
+	 */
+	private BufferedImage decodeThumbnail(byte[] photo) throws IOException {
+		try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(new ByteArrayInputStream(photo))) {
+			Iterator<ImageReader> imageReaders = ImageIO.getImageReaders(imageInputStream);
+			if (!imageReaders.hasNext()) {
+				throw new IOException("unsupported photo format");
+			}
+
+			ImageReader imageReader = imageReaders.next();
+			try {
+				imageReader.setInput(imageInputStream, true, true);
+				int subsampling = Math.max(1, Math.min(imageReader.getWidth(0) / maxWidth, imageReader.getHeight(0) / maxHeight));
+				ImageReadParam imageReadParam = imageReader.getDefaultReadParam();
+				imageReadParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				return imageReader.read(0, imageReadParam);
+			} finally {
+				imageReader.dispose();
+			}
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.dialogs;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class PhotoDecodingServiceTest {
+
+	@Test
+	public void decodesSubsampledThumbnail() throws Exception {
+		PhotoDecodingService photoDecodingService = new PhotoDecodingService(1, 4, 140, 200);
+
+		BufferedImage thumbnail = photoDecodingService.decode(null, createPhoto(560, 800)).get();
+		assertEquals(140, thumbnail.getWidth());
+		assertEquals(200, thumbnail.getHeight());
+
+		thumbnail = photoDecodingService.decode(null, createPhoto(140, 200)).get();
+		assertEquals(140, thumbnail.getWidth());
+		assertEquals(200, thumbnail.getHeight());
+		assertEquals(0, photoDecodingService.size());
+	}
+
+	@Test
+	public void cachesThumbnailsByPhotoDigest() throws Exception {
+		PhotoDecodingService photoDecodingService = new PhotoDecodingService(1, 1, 140, 200);
+		byte[] photo = createPhoto(140, 200);
+		byte[] photoDigest = MessageDigest.getInstance("SHA-256").digest(photo);
+		assertNull(photoDecodingService.getCachedThumbnail(photoDigest));
+
+		BufferedImage thumbnail = photoDecodingService.decode(photoDigest, photo).get();
+		assertSame(thumbnail, photoDecodingService.getCachedThumbnail(photoDigest.clone()));
+		assertEquals(1, photoDecodingService.getHitCount());
+		assertEquals(1, photoDecodingService.getMissCount());
+
+		byte[] otherPhoto = createPhoto(280, 400);
+		photoDecodingService.decode(MessageDigest.getInstance("SHA-1").digest(otherPhoto), otherPhoto).get();
+		assertEquals(1, photoDecodingService.size());
+		assertNull(photoDecodingService.getCachedThumbnail(photoDigest));
+	}
+
+	@Test
+	public void skipsCachingOnDigestMismatch() throws Exception {
+		PhotoDecodingService photoDecodingService = new PhotoDecodingService(1, 4, 140, 200);
+		byte[] photoDigest = MessageDigest.getInstance("SHA-256").digest(createPhoto(140, 200));
+
+		BufferedImage thumbnail = photoDecodingService.decode(photoDigest, createPhoto(280, 400)).get();
+		assertEquals(140, thumbnail.getWidth());
+		assertEquals(0, photoDecodingService.size());
+
+		photoDecodingService.decode(new byte[]{5}, createPhoto(140, 200)).get();
+		assertEquals(0, photoDecodingService.size());
+	}
+
+	@Test
+	public void reportsUndecodablePhoto() throws Exception {
+		PhotoDecodingService photoDecodingService = new PhotoDecodingService(1, 4, 140, 200);
+		try {
+			photoDecodingService.decode(MessageDigest.getInstance("SHA-256").digest(new byte[]{1, 2, 3}), new byte[]{1, 2, 3}).get();
+			fail();
+		} catch (ExecutionException e) {
+			// expected
+		}
+		assertEquals(0, photoDecodingService.size());
+	}
+
+	private static byte[] createPhoto(int width, int height) throws IOException {
+		ByteArrayOutputStream photo = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "jpg", photo);
+		return photo.toByteArray();
+	}
+}
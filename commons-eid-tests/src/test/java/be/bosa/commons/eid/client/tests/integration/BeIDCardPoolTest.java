@@ -0,0 +1,263 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.client.tests.integration;
+
+import be.bosa.commons.eid.client.BeIDCard;
+import be.bosa.commons.eid.client.BeIDCardManager;
+import be.bosa.commons.eid.client.BeIDCardPool;
+import be.bosa.commons.eid.client.CardAndTerminalManager;
+import be.bosa.commons.eid.client.FileType;
+import be.bosa.commons.eid.client.SharingViolationStrategy;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedBeIDCard;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedCardTerminal;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedCardTerminals;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BeIDCardPoolTest {
+
+	private static final long TRANSMIT_DELAY = 2;
+
+	private final List<SimulatedCardTerminal> terminals = new ArrayList<>();
+	private final List<SimulatedBeIDCard> simulatedCards = new ArrayList<>();
+	private SimulatedCardTerminals simulatedCardTerminals;
+	private CardAndTerminalManager cardAndTerminalManager;
+	private BeIDCardPool pool;
+
+	@After
+	public void tearDown() throws Exception {
+		cardAndTerminalManager.stop();
+	}
+
+	@Test
+	public void testBorrowRelease() throws Exception {
+		startPool(2);
+
+		BeIDCard first = pool.borrow(1, TimeUnit.SECONDS);
+		BeIDCard second = pool.borrow(1, TimeUnit.SECONDS);
+		assertNotNull(first);
+		assertNotNull(second);
+		assertNotSame(first, second);
+		assertEquals(2, pool.getLeasedCount());
+		assertNull(pool.borrow(100, TimeUnit.MILLISECONDS));
+
+		pool.release(first);
+		assertEquals(1, pool.getAvailableCount());
+		assertEquals(first, pool.borrow(1, TimeUnit.SECONDS));
+		assertEquals(3, pool.getBorrowCount());
+	}
+
+	@Test
+	public void testRemovedCardLeavesPool() throws Exception {
+		startPool(2);
+
+		BeIDCard leased = pool.borrow();
+		terminals.get(0).removeCard();
+		terminals.get(1).removeCard();
+		waitFor(0, 0);
+
+		pool.release(leased);
+		assertEquals(0, pool.getAvailableCount());
+		assertNull(pool.borrow(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testWaitingBorrowerGetsInsertedCard() throws Exception {
+		startPool(0);
+		SimulatedCardTerminal terminal = new SimulatedCardTerminal("Fedix SCR extra");
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Future<BeIDCard> borrowed = executor.submit(() -> pool.borrow(5, TimeUnit.SECONDS));
+		Thread.sleep(200);
+		assertEquals(1, pool.getWaitingCount());
+
+		terminal.insertCard(new SimulatedBeIDCard("Alice"));
+		simulatedCardTerminals.attachCardTerminal(terminal);
+		assertNotNull(borrowed.get());
+		assertEquals(0, pool.getWaitingCount());
+		executor.shutdown();
+	}
+
+	@Test
+	public void testBorrowExclusiveKeepsSession() throws Exception {
+		startPool(1);
+
+		BeIDCard card = pool.borrowExclusive(1, TimeUnit.SECONDS);
+		assertTrue(card.hasExclusive());
+		card.readFile(FileType.Identity);
+		card.readFile(FileType.Address);
+		assertEquals(1, simulatedCards.get(0).getExclusiveCount());
+
+		pool.release(card);
+		assertFalse(card.hasExclusive());
+		assertEquals(1, pool.getAvailableCount());
+	}
+
+	@Test
+	public void testClosedPoolTakesNoCards() throws Exception {
+		startPool(1);
+		pool.close();
+		assertEquals(0, pool.getAvailableCount());
+
+		SimulatedCardTerminal terminal = new SimulatedCardTerminal("Fedix SCR extra");
+		terminal.insertCard(new SimulatedBeIDCard("Alice"));
+		simulatedCardTerminals.attachCardTerminal(terminal);
+		Thread.sleep(500);
+		assertEquals(0, pool.getAvailableCount());
+	}
+
+	@Test
+	public void testReleaseExclusiveFromOtherThreadFails() throws Exception {
+		startPool(1);
+		BeIDCard card = pool.borrowExclusive(1, TimeUnit.SECONDS);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			executor.submit(() -> pool.release(card)).get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1, pool.getLeasedCount());
+		assertEquals(0, pool.getAvailableCount());
+		assertTrue(card.hasExclusive());
+
+		pool.release(card);
+		assertFalse(card.hasExclusive());
+		assertEquals(1, pool.getAvailableCount());
+	}
+
+	@Test
+	public void testReleaseAfterCloseKeepsCardOut() throws Exception {
+		startPool(2);
+		BeIDCard leased = pool.borrow();
+		BeIDCard exclusive = pool.borrowExclusive(1, TimeUnit.SECONDS);
+		pool.close();
+		assertEquals(0, pool.getLeasedCount());
+
+		pool.release(leased);
+		pool.release(exclusive);
+		assertFalse(exclusive.hasExclusive());
+		assertEquals(0, pool.getAvailableCount());
+		try {
+			pool.borrow(100, TimeUnit.MILLISECONDS);
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCloseWakesWaitingBorrower() throws Exception {
+		startPool(0);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		Future<BeIDCard> borrowed = executor.submit(() -> pool.borrow(5, TimeUnit.SECONDS));
+		Thread.sleep(200);
+		pool.close();
+		try {
+			borrowed.get(1, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Throughput of 16 workers each reading the identity file of a borrowed
+	 * card, for a growing number of readers. Should grow linearly.
+	 */
+	@Test
+	public void benchmarkThroughput() throws Exception {
+		for (int readers : new int[]{1, 2, 4, 8}) {
+			if (cardAndTerminalManager != null) {
+				cardAndTerminalManager.stop();
+				terminals.clear();
+			}
+			startPool(readers);
+
+			ExecutorService workers = Executors.newFixedThreadPool(16);
+			List<Future<?>> results = new ArrayList<>();
+			long start = System.nanoTime();
+			for (int i = 0; i < 50 * readers; i++) {
+				results.add(workers.submit(() -> {
+					BeIDCard card = pool.borrow();
+					try {
+						return card.readFile(FileType.Identity);
+					} finally {
+						pool.release(card);
+					}
+				}));
+			}
+			for (Future<?> result : results) {
+				result.get();
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			workers.shutdown();
+
+			System.out.println(String.format("%d readers: %6.1f reads/s, mean wait %6.2f ms", readers,
+					results.size() / seconds, pool.getTotalWaitTime(TimeUnit.MICROSECONDS) / 1000.0 / pool.getBorrowCount()));
+		}
+	}
+
+	private void startPool(int readers) throws Exception {
+		simulatedCardTerminals = new SimulatedCardTerminals();
+		for (int i = 0; i < readers; i++) {
+			SimulatedCardTerminal terminal = new SimulatedCardTerminal("Fedix SCR " + i);
+			SimulatedBeIDCard card = new SimulatedBeIDCard("Alice");
+			card.setTransmitDelay(TRANSMIT_DELAY);
+			terminal.insertCard(card);
+			simulatedCardTerminals.attachCardTerminal(terminal);
+			terminals.add(terminal);
+			simulatedCards.add(card);
+		}
+
+		cardAndTerminalManager = new CardAndTerminalManager(simulatedCardTerminals);
+		BeIDCardManager cardManager = new BeIDCardManager(cardAndTerminalManager);
+		cardManager.setSharingViolationStrategy(SharingViolationStrategy.noDelay());
+		pool = new BeIDCardPool(new TestLogger(), cardManager);
+		cardAndTerminalManager.start();
+		waitFor(readers, 0);
+	}
+
+	private void waitFor(int available, int leased) throws InterruptedException {
+		for (int i = 0; i < 100 && (pool.getAvailableCount() != available || pool.getLeasedCount() != leased); i++) {
+			Thread.sleep(50);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.client.tests.integration;
+
+import be.bosa.commons.eid.client.BeIDCard;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedBeIDCard;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedCardTerminal;
+import be.bosa.commons.eid.dialogs.BeIDSelector;
+import org.junit.Test;
+
+import java.awt.GraphicsEnvironment;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * Prints the time from opening a BeIDSelector until its list is selectable,
+ * that is until the identities of all cards are read, for 1, 4 and 8
+ * simulated cards taking {@link #TRANSMIT_DELAY} ms per APDU. Needs a
+ * display.
+ */
+public class BeIDSelectorBenchmark {
+
+	private static final long TRANSMIT_DELAY = 5;
+	private static final int ROUNDS = 5;
+
+	@Test
+	public void timeToSelectableList() {
+		assumeFalse(GraphicsEnvironment.isHeadless());
+
+		System.out.println(String.format("%6s %10s", "cards", "ms"));
+		for (int cardCount : new int[]{1, 4, 8}) {
+			long nanos = 0;
+			for (int round = 0; round < ROUNDS; round++) {
+				List<BeIDCard> cards = new ArrayList<>();
+				for (int cardIdx = 0; cardIdx < cardCount; cardIdx++) {
+					SimulatedBeIDCard simulatedCard = new SimulatedBeIDCard("Alice");
+					simulatedCard.setTransmitDelay(TRANSMIT_DELAY);
+					cards.add(new BeIDCard(new SimulatedCardTerminal("Fedix SCR " + cardIdx), simulatedCard));
+				}
+
+				long start = System.nanoTime();
+				BeIDSelector beIDSelector = new BeIDSelector(null, "Select eID card", cards);
+				beIDSelector.waitUntilIdentitiesRead();
+				nanos += System.nanoTime() - start;
+				beIDSelector.stop();
+			}
+
+			System.out.println(String.format("%6d %10.1f", cardCount, nanos / 1e6 / ROUNDS));
+		}
+	}
+}
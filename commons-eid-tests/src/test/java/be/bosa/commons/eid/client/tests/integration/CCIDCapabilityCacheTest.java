@@ -0,0 +1,136 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+
+package be.bosa.commons.eid.client.tests.integration;
+
+import be.bosa.commons.eid.client.BeIDCard;
+import be.bosa.commons.eid.client.BeIDCardManager;
+import be.bosa.commons.eid.client.CardAndTerminalManager;
+import be.bosa.commons.eid.client.event.CardTerminalEventsAdapter;
+import be.bosa.commons.eid.client.impl.CCID;
+import be.bosa.commons.eid.client.impl.CCIDCapabilityCache;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedBeIDCard;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedCardTerminal;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedCardTerminals;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CCIDCapabilityCacheTest {
+
+	private final CCIDCapabilityCache capabilityCache = CCIDCapabilityCache.getInstance();
+
+	@Before
+	public void setUp() {
+		capabilityCache.clear();
+	}
+
+	@Test
+	public void testSecondCardSkipsDiscovery() {
+		// the cache is shared with every other test in this JVM, so only count hits from here on
+		long hitCount = capabilityCache.getHitCount();
+		SimulatedCardTerminal terminal = new SimulatedCardTerminal("Fedix SCR 0");
+		PinPadCard firstCard = new PinPadCard();
+		assertTrue(new BeIDCard(terminal, firstCard).cardTerminalHasCCIDFeature(CCID.FEATURE.VERIFY_PIN_DIRECT));
+		assertEquals(1, firstCard.controlCommandCount);
+
+		PinPadCard secondCard = new PinPadCard();
+		BeIDCard beIDCard = new BeIDCard(terminal, secondCard);
+		assertTrue(beIDCard.cardTerminalHasCCIDFeature(CCID.FEATURE.VERIFY_PIN_DIRECT));
+		assertFalse(beIDCard.cardTerminalHasCCIDFeature(CCID.FEATURE.MODIFY_PIN_DIRECT));
+		assertEquals(0, secondCard.controlCommandCount);
+		assertEquals(hitCount + 1, capabilityCache.getHitCount());
+	}
+
+	@Test
+	public void testFailedDiscoveryNotCached() {
+		SimulatedCardTerminal terminal = new SimulatedCardTerminal("Fedix SCR 0");
+		PinPadCard failingCard = new PinPadCard();
+		failingCard.failing = true;
+		assertFalse(new BeIDCard(terminal, failingCard).cardTerminalHasCCIDFeature(CCID.FEATURE.VERIFY_PIN_DIRECT));
+		assertEquals(0, capabilityCache.size());
+
+		PinPadCard card = new PinPadCard();
+		assertTrue(new BeIDCard(terminal, card).cardTerminalHasCCIDFeature(CCID.FEATURE.VERIFY_PIN_DIRECT));
+		assertEquals(1, card.controlCommandCount);
+		assertEquals(1, capabilityCache.size());
+	}
+
+	@Test
+	public void testDetachInvalidates() throws Exception {
+		SimulatedCardTerminals simulatedCardTerminals = new SimulatedCardTerminals();
+		SimulatedCardTerminal terminal = new SimulatedCardTerminal("Fedix SCR 0");
+		PinPadCard card = new PinPadCard();
+		terminal.insertCard(card);
+		simulatedCardTerminals.attachCardTerminal(terminal);
+
+		CardAndTerminalManager cardAndTerminalManager = new CardAndTerminalManager(simulatedCardTerminals);
+		new BeIDCardManager(cardAndTerminalManager);
+		CountDownLatch attached = new CountDownLatch(1);
+		cardAndTerminalManager.addCardTerminalListener(new CardTerminalEventsAdapter() {
+			@Override
+			public void terminalAttached(CardTerminal cardTerminal) {
+				attached.countDown();
+			}
+		});
+		cardAndTerminalManager.start();
+		try {
+			assertTrue(attached.await(5, TimeUnit.SECONDS));
+			new BeIDCard(terminal, card).cardTerminalHasCCIDFeature(CCID.FEATURE.VERIFY_PIN_DIRECT);
+			assertEquals(1, capabilityCache.size());
+
+			simulatedCardTerminals.detachCardTerminal(terminal);
+			for (int i = 0; i < 100 && capabilityCache.size() != 0; i++) {
+				Thread.sleep(50);
+			}
+			assertEquals(0, capabilityCache.size());
+		} finally {
+			cardAndTerminalManager.stop();
+		}
+	}
+
+	private static class PinPadCard extends SimulatedBeIDCard {
+
+		// VERIFY_PIN_DIRECT only
+		private static final byte[] FEATURES = new byte[]{0x06, 0x04, 0x42, 0x33, 0x00, 0x06};
+
+		private int controlCommandCount;
+		private boolean failing;
+
+		PinPadCard() {
+			super("Alice");
+		}
+
+		@Override
+		public byte[] transmitControlCommand(int controlCode, byte[] command) throws CardException {
+			controlCommandCount++;
+			if (failing) {
+				throw new CardException("reader busy");
+			}
+			return FEATURES.clone();
+		}
+	}
+}
@@ -18,6 +18,8 @@
 package be.bosa.commons.eid.client.tests.integration;
 
 import be.bosa.commons.eid.client.CardAndTerminalManager;
+import be.bosa.commons.eid.client.CardAndTerminalManager.DetectionMode;
+import be.bosa.commons.eid.client.event.CardEventsAdapter;
 import be.bosa.commons.eid.client.event.CardEventsListener;
 import be.bosa.commons.eid.client.event.CardTerminalEventsListener;
 import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedCard;
@@ -36,8 +38,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class CardAndTerminalManagerTests {
 
@@ -127,10 +136,20 @@ public class CardAndTerminalManagerTests {
 
 	@Test
 	public void testTerminalAttachDetachDetection() throws InterruptedException {
+		testTerminalAttachDetachDetection(DetectionMode.POLLING);
+	}
+
+	@Test
+	public void testTerminalAttachDetachDetectionEventDriven() throws InterruptedException {
+		testTerminalAttachDetachDetection(DetectionMode.EVENT_DRIVEN);
+	}
+
+	private void testTerminalAttachDetachDetection(DetectionMode detectionMode) throws InterruptedException {
 		Random random = new Random(0);
 		Set<CardTerminal> expectedState = new HashSet<>();
 
 		CardAndTerminalManager cardAndTerminalManager = new CardAndTerminalManager(new TestLogger(), simulatedCardTerminals);
+		cardAndTerminalManager.setDetectionMode(detectionMode).setTerminalPollDelay(250);
 		RecordKeepingCardTerminalEventsListener recorder = new RecordKeepingCardTerminalEventsListener();
 		cardAndTerminalManager.addCardTerminalListener(recorder);
 		cardAndTerminalManager.addCardTerminalListener(new NPEProneCardTerminalEventsListener());
@@ -236,6 +255,197 @@ public class CardAndTerminalManagerTests {
 		assertEquals(expectedState, recorder.getRecordedState());
 	}
 
+	@Test
+	public void testCardInsertRemoveDetectionEventDriven() throws Exception {
+		Random random = new Random(0);
+		Set<CardTerminal> expectedState = new HashSet<>();
+		CardAndTerminalManager cardAndTerminalManager = new CardAndTerminalManager(new TestLogger(), simulatedCardTerminals);
+		cardAndTerminalManager.setDetectionMode(DetectionMode.EVENT_DRIVEN).setTerminalPollDelay(250);
+		RecordKeepingCardEventsListener recorder = new RecordKeepingCardEventsListener();
+		cardAndTerminalManager.addCardListener(recorder);
+		cardAndTerminalManager.addCardListener(new NPEProneCardEventsListener());
+		cardAndTerminalManager.start();
+
+		for (SimulatedCardTerminal terminal : simulatedCardTerminal) {
+			simulatedCardTerminals.attachCardTerminal(terminal);
+		}
+
+		// a card taken out and put back in between two waits is no change, so only compare which terminals hold a card
+		for (int i = 0; i < 10000; i++) {
+			SimulatedCardTerminal terminal = simulatedCardTerminal.get(random.nextInt(NUMBER_OF_TERMINALS));
+			if (expectedState.remove(terminal)) {
+				terminal.removeCard();
+			} else {
+				terminal.insertCard(simulatedBeIDCard.get(random.nextInt(NUMBER_OF_CARDS)));
+				expectedState.add(terminal);
+			}
+		}
+
+		Thread.sleep(1000);
+		cardAndTerminalManager.stop();
+		assertEquals(expectedState, recorder.getRecordedState().keySet());
+	}
+
+	@Test
+	public void testCardSwapEventDriven() throws Exception {
+		SimulatedCardTerminal terminal = simulatedCardTerminal.get(0);
+		SimulatedCard firstCard = simulatedBeIDCard.get(0);
+		SimulatedCard secondCard = simulatedBeIDCard.get(1);
+		final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+		CardAndTerminalManager cardAndTerminalManager = new CardAndTerminalManager(new TestLogger(), simulatedCardTerminals);
+		cardAndTerminalManager.setDetectionMode(DetectionMode.EVENT_DRIVEN).setTerminalPollDelay(60000);
+		cardAndTerminalManager.addCardListener(new CardEventsAdapter() {
+			@Override
+			public void cardInserted(CardTerminal cardTerminal, Card card) {
+				events.add("inserted " + StringUtils.atrToString(card.getATR()));
+			}
+
+			@Override
+			public void cardRemoved(CardTerminal cardTerminal) {
+				events.add("removed");
+			}
+		});
+		terminal.insertCard(firstCard);
+		simulatedCardTerminals.attachCardTerminal(terminal);
+		cardAndTerminalManager.start();
+		assertEquals("inserted " + StringUtils.atrToString(firstCard.getATR()), events.poll(5, TimeUnit.SECONDS));
+
+		// swapped without the manager seeing the empty terminal in between
+		synchronized (simulatedCardTerminals) {
+			terminal.removeCard();
+			terminal.insertCard(secondCard);
+		}
+		assertEquals("removed", events.poll(5, TimeUnit.SECONDS));
+		assertEquals("inserted " + StringUtils.atrToString(secondCard.getATR()), events.poll(5, TimeUnit.SECONDS));
+
+		terminal.removeCard();
+		assertEquals("removed", events.poll(5, TimeUnit.SECONDS));
+		cardAndTerminalManager.stop();
+		assertTrue(events.isEmpty());
+	}
+
+	@Test
+	public void testSlowListenerDoesNotStallOtherTerminals() throws Exception {
+		final CardTerminal slowTerminal = simulatedCardTerminal.get(0);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch initialized = new CountDownLatch(1);
+		final BlockingQueue<CardTerminal> inserted = new LinkedBlockingQueue<>();
+
+		CardAndTerminalManager cardAndTerminalManager = new CardAndTerminalManager(new TestLogger(), simulatedCardTerminals);
+		cardAndTerminalManager.setExecutor(Executors.newCachedThreadPool());
+		cardAndTerminalManager.addCardListener(new CardEventsAdapter() {
+			@Override
+			public void cardInserted(CardTerminal cardTerminal, Card card) {
+				if (cardTerminal == slowTerminal) {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+				}
+				inserted.add(cardTerminal);
+			}
+
+			@Override
+			public void cardEventsInitialized() {
+				initialized.countDown();
+			}
+		});
+		for (SimulatedCardTerminal terminal : simulatedCardTerminal) {
+			simulatedCardTerminals.attachCardTerminal(terminal);
+		}
+		cardAndTerminalManager.start();
+		initialized.await();
+
+		simulatedCardTerminal.get(0).insertCard(simulatedBeIDCard.get(0));
+		Thread.sleep(500);
+		simulatedCardTerminal.get(1).insertCard(simulatedBeIDCard.get(1));
+
+		assertEquals(simulatedCardTerminal.get(1), inserted.poll(1, TimeUnit.SECONDS));
+		release.countDown();
+		assertEquals(slowTerminal, inserted.poll(1, TimeUnit.SECONDS));
+		cardAndTerminalManager.stop();
+	}
+
+	@Test
+	public void testErrorInListenerDoesNotStallTerminal() throws Exception {
+		SimulatedCardTerminal terminal = simulatedCardTerminal.get(0);
+		final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+		CardAndTerminalManager cardAndTerminalManager = new CardAndTerminalManager(new TestLogger(), simulatedCardTerminals);
+		cardAndTerminalManager.setDetectionMode(DetectionMode.EVENT_DRIVEN).setTerminalPollDelay(60000);
+		cardAndTerminalManager.setExecutor(Executors.newCachedThreadPool());
+		cardAndTerminalManager.addCardListener(new CardEventsAdapter() {
+			@Override
+			public void cardInserted(CardTerminal cardTerminal, Card card) {
+				events.add("inserted");
+				if (events.size() == 1) {
+					throw new AssertionError("thrown in listener");
+				}
+			}
+
+			@Override
+			public void cardRemoved(CardTerminal cardTerminal) {
+				events.add("removed");
+			}
+		});
+		terminal.insertCard(simulatedBeIDCard.get(0));
+		simulatedCardTerminals.attachCardTerminal(terminal);
+		cardAndTerminalManager.start();
+		assertEquals("inserted", events.poll(5, TimeUnit.SECONDS));
+
+		terminal.removeCard();
+		assertEquals("removed", events.poll(5, TimeUnit.SECONDS));
+		terminal.insertCard(simulatedBeIDCard.get(1));
+		assertEquals("inserted", events.poll(5, TimeUnit.SECONDS));
+		cardAndTerminalManager.stop();
+	}
+
+	@Test
+	public void testEventOrderPerTerminal() throws Exception {
+		Random random = new Random(0);
+		final Map<CardTerminal, List<String>> events = new ConcurrentHashMap<>();
+
+		CardAndTerminalManager cardAndTerminalManager = new CardAndTerminalManager(new TestLogger(), simulatedCardTerminals);
+		cardAndTerminalManager.setExecutor(Executors.newFixedThreadPool(4));
+		cardAndTerminalManager.addCardListener(new CardEventsAdapter() {
+			@Override
+			public void cardInserted(CardTerminal cardTerminal, Card card) {
+				events.computeIfAbsent(cardTerminal, key -> new ArrayList<>()).add("inserted");
+			}
+
+			@Override
+			public void cardRemoved(CardTerminal cardTerminal) {
+				events.computeIfAbsent(cardTerminal, key -> new ArrayList<>()).add("removed");
+			}
+		});
+		cardAndTerminalManager.start();
+
+		for (SimulatedCardTerminal terminal : simulatedCardTerminal) {
+			simulatedCardTerminals.attachCardTerminal(terminal);
+		}
+
+		for (int i = 0; i < 1000; i++) {
+			SimulatedCardTerminal terminal = simulatedCardTerminal.get(random.nextInt(NUMBER_OF_TERMINALS));
+			if (terminal.isCardPresent()) {
+				terminal.removeCard();
+			} else {
+				terminal.insertCard(simulatedBeIDCard.get(random.nextInt(NUMBER_OF_CARDS)));
+			}
+			Thread.sleep(random.nextInt(3));
+		}
+
+		Thread.sleep(1000);
+		cardAndTerminalManager.stop();
+
+		for (List<String> terminalEvents : events.values()) {
+			for (int i = 0; i < terminalEvents.size(); i++) {
+				assertEquals(i % 2 == 0 ? "inserted" : "removed", terminalEvents.get(i));
+			}
+		}
+	}
+
 	private class NPEProneCardTerminalEventsListener implements CardTerminalEventsListener {
 		@Override
 		public void terminalAttached(CardTerminal cardTerminal) {
@@ -0,0 +1,119 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.client.tests.integration;
+
+import be.bosa.commons.eid.client.CardAndTerminalManager;
+import be.bosa.commons.eid.client.CardAndTerminalManager.DetectionMode;
+import be.bosa.commons.eid.client.event.CardEventsAdapter;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedBeIDCard;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedCardTerminal;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedCardTerminals;
+import org.junit.Test;
+
+import javax.smartcardio.Card;
+import javax.smartcardio.CardTerminal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the time between a card being inserted into one of 40 simulated
+ * terminals and the cardInserted callback, and the number of isCardPresent
+ * calls made meanwhile, for both detection modes of CardAndTerminalManager.
+ */
+public class CardDetectionBenchmark {
+
+	private static final int NUMBER_OF_TERMINALS = 40;
+	private static final int NUMBER_OF_INSERTS = 50;
+
+	@Test
+	public void benchmarkInsertLatency() throws Exception {
+		for (DetectionMode detectionMode : DetectionMode.values()) {
+			benchmarkInsertLatency(detectionMode);
+		}
+	}
+
+	private void benchmarkInsertLatency(DetectionMode detectionMode) throws Exception {
+		Random random = new Random(0);
+		SimulatedCardTerminals simulatedCardTerminals = new SimulatedCardTerminals();
+		List<SimulatedCardTerminal> terminals = new ArrayList<>();
+		for (int i = 0; i < NUMBER_OF_TERMINALS; i++) {
+			SimulatedCardTerminal terminal = new SimulatedCardTerminal("Fedix SCR " + i);
+			terminals.add(terminal);
+			simulatedCardTerminals.attachCardTerminal(terminal);
+		}
+
+		final BlockingQueue<Long> events = new LinkedBlockingQueue<>();
+		CardAndTerminalManager cardAndTerminalManager = new CardAndTerminalManager(simulatedCardTerminals);
+		cardAndTerminalManager.setDetectionMode(detectionMode);
+		cardAndTerminalManager.setAutoconnect(false);
+		cardAndTerminalManager.addCardListener(new CardEventsAdapter() {
+			@Override
+			public void cardInserted(CardTerminal cardTerminal, Card card) {
+				events.add(System.nanoTime());
+			}
+
+			@Override
+			public void cardRemoved(CardTerminal cardTerminal) {
+				events.add(System.nanoTime());
+			}
+		});
+		cardAndTerminalManager.start();
+		Thread.sleep(500);
+
+		int queriesBefore = countCardPresentQueries(terminals);
+		long start = System.nanoTime();
+		long totalLatency = 0;
+		long maxLatency = 0;
+
+		for (int i = 0; i < NUMBER_OF_INSERTS; i++) {
+			SimulatedCardTerminal terminal = terminals.get(random.nextInt(NUMBER_OF_TERMINALS));
+			Thread.sleep(random.nextInt(100));
+
+			long inserted = System.nanoTime();
+			terminal.insertCard(new SimulatedBeIDCard("Alice"));
+			long latency = events.poll(5, TimeUnit.SECONDS) - inserted;
+			totalLatency += latency;
+			maxLatency = Math.max(maxLatency, latency);
+
+			terminal.removeCard();
+			events.poll(5, TimeUnit.SECONDS);
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		int queries = countCardPresentQueries(terminals) - queriesBefore;
+		cardAndTerminalManager.stop();
+		assertEquals(0, events.size());
+
+		System.out.println(String.format("%-12s insert latency: mean %6.2f ms, max %6.2f ms; isCardPresent: %8.1f/s",
+				detectionMode, totalLatency / 1e6 / NUMBER_OF_INSERTS, maxLatency / 1e6, queries / seconds));
+	}
+
+	private int countCardPresentQueries(List<SimulatedCardTerminal> terminals) {
+		int queries = 0;
+		for (SimulatedCardTerminal terminal : terminals) {
+			queries += terminal.getCardPresentQueries();
+		}
+		return queries;
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.client.tests.integration;
+
+import be.bosa.commons.eid.client.BeIDCard;
+import be.bosa.commons.eid.client.CertificateStore;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedBeIDCard;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedCardTerminal;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CertificateStoreTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final List<Runnable> verifications = new ArrayList<>();
+
+	@Test
+	public void testChainFromStore() throws Exception {
+		Path directory = temporaryFolder.getRoot().toPath();
+		SimulatedBeIDCard firstCard = new SimulatedBeIDCard("Alice");
+		List<X509Certificate> chain = createBeIDCard(firstCard, new CertificateStore(directory, verifications::add))
+				.getAuthenticationCertificateChain();
+		assertEquals(3, chain.size());
+		assertEquals(2, countFiles(directory));
+		assertTrue(verifications.isEmpty());
+
+		// a new session, another card
+		CertificateStore certificateStore = new CertificateStore(directory, verifications::add);
+		assertEquals(2, certificateStore.size());
+		SimulatedBeIDCard secondCard = new SimulatedBeIDCard("Alice");
+		BeIDCard beIDCard = createBeIDCard(secondCard, certificateStore);
+
+		assertEquals(chain, beIDCard.getAuthenticationCertificateChain());
+		assertEquals(2, certificateStore.getHitCount());
+		assertEquals(0, certificateStore.getMissCount());
+		assertTrue(secondCard.getTransmitCount() < firstCard.getTransmitCount());
+
+		// the Root is confirmed once per card, however many chains use it
+		beIDCard.getRRNCertificateChain();
+		assertEquals(3, certificateStore.getHitCount());
+		assertEquals(2, verifications.size());
+		for (Runnable verification : verifications) {
+			verification.run();
+		}
+		assertEquals(2, certificateStore.size());
+	}
+
+	@Test
+	public void testCorruptedFileIgnored() throws Exception {
+		Path directory = temporaryFolder.getRoot().toPath();
+		readChain(new CertificateStore(directory, verifications::add));
+		try (Stream<Path> files = Files.list(directory)) {
+			Path file = files.findFirst().get();
+			byte[] data = Files.readAllBytes(file);
+			data[data.length - 1]++;
+			Files.write(file, data);
+		}
+
+		assertEquals(1, new CertificateStore(directory, verifications::add).size());
+	}
+
+	@Test
+	public void testMismatchAdded() throws Exception {
+		Path directory = temporaryFolder.getRoot().toPath();
+		CertificateStore certificateStore = new CertificateStore(directory, verifications::add);
+		List<X509Certificate> chain = readChain(certificateStore);
+		X509Certificate caCertificate = chain.get(1);
+		X509Certificate otherCaCertificate = createCertificateLike(caCertificate);
+
+		assertTrue(certificateStore.confirm(caCertificate, caCertificate.getEncoded()));
+		assertFalse(certificateStore.confirm(caCertificate, otherCaCertificate.getEncoded()));
+		assertEquals(3, certificateStore.size());
+		assertEquals(3, countFiles(directory));
+		assertEquals(caCertificate, certificateStore.getIssuer(chain.get(0)));
+	}
+
+	@Test
+	public void testIssuerMustVerify() throws Exception {
+		Path directory = temporaryFolder.getRoot().toPath();
+		List<X509Certificate> chain = readChain(new CertificateStore(temporaryFolder.newFolder().toPath(), verifications::add));
+
+		// same subject and key identifier as the Citizen CA, another key
+		CertificateStore certificateStore = new CertificateStore(directory, verifications::add);
+		certificateStore.put(createCertificateLike(chain.get(1)).getEncoded());
+		assertNull(certificateStore.getIssuer(chain.get(0)));
+
+		assertEquals(chain, readChain(certificateStore));
+		assertEquals(3, certificateStore.size());
+		assertEquals(chain.get(1), certificateStore.getIssuer(chain.get(0)));
+	}
+
+	private static List<X509Certificate> readChain(CertificateStore certificateStore) throws Exception {
+		return createBeIDCard(new SimulatedBeIDCard("Alice"), certificateStore).getAuthenticationCertificateChain();
+	}
+
+	private static BeIDCard createBeIDCard(SimulatedBeIDCard simulatedCard, CertificateStore certificateStore) {
+		BeIDCard beIDCard = new BeIDCard(new SimulatedCardTerminal("Fedix SCR 0"), simulatedCard, new TestLogger());
+		beIDCard.setCertificateStore(certificateStore);
+		return beIDCard;
+	}
+
+	private static X509Certificate createCertificateLike(X509Certificate certificate) throws Exception {
+		KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+		keyPairGenerator.initialize(1024);
+		KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+		X509CertificateHolder certificateHolder = new JcaX509CertificateHolder(certificate);
+		JcaX509v3CertificateBuilder certificateBuilder = new JcaX509v3CertificateBuilder(certificate.getIssuerX500Principal(),
+				BigInteger.ONE, certificate.getNotBefore(), certificate.getNotAfter(), certificate.getSubjectX500Principal(), keyPair.getPublic());
+		certificateBuilder.copyAndAddExtension(Extension.subjectKeyIdentifier, false, certificateHolder);
+		certificateBuilder.copyAndAddExtension(Extension.authorityKeyIdentifier, false, certificateHolder);
+		return new JcaX509CertificateConverter().getCertificate(
+				certificateBuilder.build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate())));
+	}
+
+	private static long countFiles(Path directory) throws Exception {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.count();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.client.tests.integration;
+
+import be.bosa.commons.eid.client.BeIDCard;
+import be.bosa.commons.eid.client.FileType;
+import be.bosa.commons.eid.client.SharingViolationStrategy;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedBeIDCard;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedCardTerminal;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Several threads sharing one BeIDCard on a simulated card that takes
+ * {@link #TRANSMIT_DELAY} ms per APDU. Prints the throughput and the time
+ * threads spent queued for exclusive access, per number of threads.
+ */
+public class ExclusiveAccessBenchmark {
+
+	private static final long TRANSMIT_DELAY = 1;
+	private static final FileType[] FILES = {FileType.Identity, FileType.Address, FileType.IdentitySignature, FileType.AddressSignature};
+
+	private SimulatedBeIDCard simulatedCard;
+	private BeIDCard beIDCard;
+
+	@Before
+	public void setUp() {
+		simulatedCard = new SimulatedBeIDCard("Alice");
+		simulatedCard.setTransmitDelay(TRANSMIT_DELAY);
+		beIDCard = new BeIDCard(new SimulatedCardTerminal("Fedix SCR 0"), simulatedCard);
+		beIDCard.setSharingViolationStrategy(SharingViolationStrategy.noDelay());
+	}
+
+	@Test
+	public void testNestedExclusiveIsOneTransaction() throws Exception {
+		beIDCard.beginExclusive();
+		try {
+			beIDCard.readAll(EnumSet.of(FileType.Identity, FileType.Address));
+			beIDCard.readFile(FileType.Photo);
+			assertTrue(beIDCard.hasExclusive());
+		} finally {
+			beIDCard.endExclusive();
+		}
+
+		assertFalse(beIDCard.hasExclusive());
+		assertEquals(1, simulatedCard.getExclusiveCount());
+	}
+
+	@Test
+	public void testBeginExclusiveTimesOut() throws Exception {
+		beIDCard.beginExclusive();
+		try {
+			ExecutorService executor = Executors.newSingleThreadExecutor();
+			Future<Boolean> granted = executor.submit(() -> beIDCard.beginExclusive(50, TimeUnit.MILLISECONDS));
+			assertFalse(granted.get());
+			executor.shutdown();
+		} finally {
+			beIDCard.endExclusive();
+		}
+
+		assertTrue(beIDCard.beginExclusive(50, TimeUnit.MILLISECONDS));
+		beIDCard.endExclusive();
+	}
+
+	@Test
+	public void testConcurrentReadsDoNotInterleave() throws Exception {
+		byte[][] expected = new byte[FILES.length][];
+		for (int i = 0; i < FILES.length; i++) {
+			expected[i] = beIDCard.readFile(FILES[i]);
+		}
+
+		run(8, 10, (thread, iteration) -> {
+			int file = (thread + iteration) % FILES.length;
+			assertArrayEquals(expected[file], beIDCard.readFile(FILES[file]));
+		});
+	}
+
+	@Test
+	public void benchmarkContention() throws Exception {
+		System.out.println(String.format("%8s %10s %12s", "threads", "reads/s", "exclusive/s"));
+		for (int threads : new int[]{1, 2, 4, 8, 16}) {
+			setUp();
+			int reads = 10 * threads;
+			long nanos = run(threads, 10, (thread, iteration) -> beIDCard.readFile(FILES[(thread + iteration) % FILES.length]));
+			System.out.println(String.format("%8d %10.1f %12.1f", threads, reads / (nanos / 1e9),
+					simulatedCard.getExclusiveCount() / (nanos / 1e9)));
+		}
+	}
+
+	private long run(int threads, int iterations, Task task) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> results = new ArrayList<>();
+		long start = System.nanoTime();
+		for (int thread = 0; thread < threads; thread++) {
+			int threadNumber = thread;
+			results.add(executor.submit(() -> {
+				for (int iteration = 0; iteration < iterations; iteration++) {
+					task.run(threadNumber, iteration);
+				}
+				return null;
+			}));
+		}
+		for (Future<?> result : results) {
+			result.get();
+		}
+		long nanos = System.nanoTime() - start;
+		executor.shutdown();
+		return nanos;
+	}
+
+	private interface Task {
+		void run(int thread, int iteration) throws Exception;
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.client.tests.integration;
+
+import be.bosa.commons.eid.client.BeIDCard;
+import be.bosa.commons.eid.client.FileCache;
+import be.bosa.commons.eid.client.FileType;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedBeIDCard;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedCardTerminal;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class FileCacheTest {
+
+	private FileCache fileCache;
+	private BeIDCard beIDCard;
+
+	@Before
+	public void setUp() {
+		fileCache = new FileCache();
+		beIDCard = new BeIDCard(new SimulatedCardTerminal("Fedix SCR 0"), new SimulatedBeIDCard("Alice"), new TestLogger());
+		beIDCard.setFileCache(fileCache);
+	}
+
+	@Test
+	public void testCertificateChainsShareRoot() throws Exception {
+		List<X509Certificate> authenticationChain = beIDCard.getAuthenticationCertificateChain();
+		assertEquals(0, fileCache.getHitCount());
+		assertEquals(3, fileCache.getMissCount());
+
+		List<X509Certificate> rrnChain = beIDCard.getRRNCertificateChain();
+		assertEquals(1, fileCache.getHitCount());
+		assertEquals(4, fileCache.getMissCount());
+
+		assertEquals(authenticationChain.get(2), rrnChain.get(1));
+	}
+
+	@Test
+	public void testCachedFileIsCopied() throws Exception {
+		byte[] identity = beIDCard.readFile(FileType.Identity);
+		identity[0] = 0;
+
+		byte[] cachedIdentity = beIDCard.readFile(FileType.Identity);
+		assertEquals(1, fileCache.getHitCount());
+		assertArrayEquals(beIDCard.readFile(FileType.Identity), cachedIdentity);
+		assertEquals(1, cachedIdentity[0]);
+	}
+
+	@Test
+	public void testAddressNotCached() throws Exception {
+		beIDCard.readFile(FileType.Address);
+		beIDCard.readFile(FileType.Address);
+
+		assertEquals(0, fileCache.getHitCount());
+		assertEquals(0, fileCache.getMissCount());
+		assertEquals(0, fileCache.getCardCount());
+	}
+
+	@Test
+	public void testCloseInvalidates() throws Exception {
+		beIDCard.readFile(FileType.Photo);
+		assertEquals(1, fileCache.getCardCount());
+
+		beIDCard.close();
+		assertEquals(0, fileCache.getCardCount());
+	}
+}
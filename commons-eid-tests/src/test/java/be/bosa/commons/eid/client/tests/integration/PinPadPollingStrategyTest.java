@@ -0,0 +1,139 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+
+package be.bosa.commons.eid.client.tests.integration;
+
+import be.bosa.commons.eid.client.PinPadPollingStrategy;
+import be.bosa.commons.eid.client.impl.CCID;
+import be.bosa.commons.eid.client.impl.CCIDCapabilityCache;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedBeIDCard;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedCardTerminal;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PinPadPollingStrategyTest {
+
+	private static final String READER_NAME = "Fedix SCR 0";
+	private static final String READER_MODEL = "Fedix SCR";
+	private static final int POLLS = 16;
+
+	@Before
+	public void setUp() {
+		CCIDCapabilityCache.getInstance().clear();
+	}
+
+	@Test
+	public void testFixedInterval() throws Exception {
+		PinPadPollingStrategy strategy = PinPadPollingStrategy.fixedInterval(50);
+
+		waitForOK(strategy, 0x00, 0x2b, 0x00, 0x0d);
+		assertEquals(2, strategy.getPollCount());
+		assertEquals(Collections.singletonMap(READER_MODEL, 50L), strategy.getAddedLatencies());
+	}
+
+	@Test
+	public void testAdaptivePollsFastAfterKey() throws Exception {
+		PinPadPollingStrategy strategy = PinPadPollingStrategy.adaptive(10, 200);
+
+		waitForOK(strategy, 0x00, 0x2b, 0x00, 0x0d);
+		assertEquals(Collections.singletonMap(READER_MODEL, 10L), strategy.getAddedLatencies());
+
+		// OK seen without waiting after the last digit
+		waitForOK(strategy, 0x2b, 0x2b, 0x0d);
+		assertEquals(Collections.singletonMap(READER_MODEL, 5L), strategy.getAddedLatencies());
+	}
+
+	@Test
+	public void testAdaptiveBacksOff() throws Exception {
+		PinPadPollingStrategy strategy = PinPadPollingStrategy.adaptive(10, 40);
+
+		// 10 ms until 40 ms have passed, then a quarter of the time waited so far
+		int[] keys = new int[POLLS + 1];
+		keys[POLLS] = 0x0d;
+		long start = System.nanoTime();
+		waitForOK(strategy, keys);
+		long millis = (System.nanoTime() - start) / 1000000;
+		assertTrue(millis > 10 * POLLS);
+		assertEquals(POLLS, strategy.getPollCount());
+		assertEquals(Collections.singletonMap(READER_MODEL, 40L), strategy.getAddedLatencies());
+	}
+
+	@Test
+	public void testCancelNotRecorded() throws Exception {
+		PinPadPollingStrategy strategy = PinPadPollingStrategy.adaptive();
+
+		try {
+			waitForOK(strategy, 0x00, 0x1b);
+			fail();
+		} catch (SecurityException e) {
+			assertTrue(strategy.getAddedLatencies().isEmpty());
+		}
+	}
+
+	@Test
+	public void testLatencyPerReaderModel() {
+		PinPadPollingStrategy strategy = PinPadPollingStrategy.fixedInterval();
+		strategy.confirmed("ACS ACR38U 00 00", 10);
+		strategy.confirmed("ACS ACR38U 01 00", 30);
+		strategy.confirmed("SCM Microsystems Inc. SPR 532 0", 40);
+		strategy.confirmed("SCM Microsystems Inc. SPR 532 1", 0);
+
+		Map<String, Long> expected = new HashMap<>();
+		expected.put("ACS ACR38U", 20L);
+		expected.put("SCM Microsystems Inc. SPR 532", 20L);
+		assertEquals(expected, strategy.getAddedLatencies());
+	}
+
+	private static void waitForOK(PinPadPollingStrategy strategy, int... keys) throws Exception {
+		PinPadCard card = new PinPadCard(keys);
+		CCID ccid = new CCID(card, new SimulatedCardTerminal(READER_NAME), new TestLogger());
+		ccid.waitForOK(strategy);
+		assertEquals(keys.length, card.keyIdx);
+	}
+
+	private static class PinPadCard extends SimulatedBeIDCard {
+
+		private static final int GET_KEY_PRESSED = 0x42330005;
+		// GET_KEY_PRESSED only
+		private static final byte[] FEATURES = new byte[]{0x05, 0x04, 0x42, 0x33, 0x00, 0x05};
+
+		private final int[] keys;
+		private int keyIdx;
+
+		PinPadCard(int[] keys) {
+			super("Alice");
+			this.keys = keys;
+		}
+
+		@Override
+		public byte[] transmitControlCommand(int controlCode, byte[] command) {
+			if (controlCode != GET_KEY_PRESSED) {
+				return FEATURES.clone();
+			}
+			return new byte[]{(byte) keys[keyIdx++]};
+		}
+	}
+}
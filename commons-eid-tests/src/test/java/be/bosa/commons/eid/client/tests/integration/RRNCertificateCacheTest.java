@@ -0,0 +1,76 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.client.tests.integration;
+
+import be.bosa.commons.eid.client.BeIDCard;
+import be.bosa.commons.eid.client.FileType;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedBeIDCard;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedCardTerminal;
+import be.bosa.commons.eid.consumer.RRNCertificateCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class RRNCertificateCacheTest {
+
+	private RRNCertificateCache cache;
+	private BeIDCard beIDCard;
+
+	@Before
+	public void setUp() {
+		cache = new RRNCertificateCache(2);
+		beIDCard = new BeIDCard(new SimulatedCardTerminal("Fedix SCR 0"), new SimulatedBeIDCard("Alice"), new TestLogger());
+		beIDCard.setCertificateDecoder(cache::getCertificate);
+	}
+
+	@Test
+	public void testCardCertificatesDecodedOnce() throws Exception {
+		X509Certificate rrnCertificate = beIDCard.getRRNCertificate();
+		assertSame(rrnCertificate, beIDCard.getRRNCertificate());
+		assertSame(rrnCertificate, beIDCard.getRRNCertificateChain().get(0));
+
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEvicted() throws Exception {
+		X509Certificate rrnCertificate = beIDCard.getRRNCertificate();
+		beIDCard.getRootCACertificate();
+		beIDCard.getRRNCertificate();
+		beIDCard.getCACertificate();
+		assertEquals(2, cache.size());
+
+		// the root certificate was evicted, the RRN certificate was not
+		assertSame(rrnCertificate, beIDCard.getRRNCertificate());
+		long misses = cache.getMissCount();
+		beIDCard.getRootCACertificate();
+		assertEquals(misses + 1, cache.getMissCount());
+	}
+
+	@Test
+	public void testWithoutDecoder() throws Exception {
+		beIDCard.setCertificateDecoder(null);
+		assertEquals(beIDCard.getCertificate(FileType.RRNCertificate), beIDCard.getCertificate(FileType.RRNCertificate));
+		assertEquals(0, cache.getMissCount());
+	}
+}
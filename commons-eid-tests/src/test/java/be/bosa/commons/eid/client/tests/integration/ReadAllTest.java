@@ -0,0 +1,106 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.client.tests.integration;
+
+import be.bosa.commons.eid.client.BeIDCard;
+import be.bosa.commons.eid.client.FileCache;
+import be.bosa.commons.eid.client.FileType;
+import be.bosa.commons.eid.client.SharingViolationStrategy;
+import be.bosa.commons.eid.client.event.BeIDCardAdapter;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedBeIDCard;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedCardTerminal;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReadAllTest {
+
+	private static final Set<FileType> ALICE_FILES = EnumSet.complementOf(EnumSet.of(FileType.NonRepudiationCertificate));
+
+	private SimulatedBeIDCard simulatedCard;
+	private BeIDCard beIDCard;
+
+	@Before
+	public void setUp() {
+		simulatedCard = new SimulatedBeIDCard("Alice");
+		beIDCard = new BeIDCard(new SimulatedCardTerminal("Fedix SCR 0"), simulatedCard, new TestLogger());
+		beIDCard.setSharingViolationStrategy(SharingViolationStrategy.noDelay());
+	}
+
+	@Test
+	public void testReadAll() throws Exception {
+		Map<FileType, byte[]> files = beIDCard.readAll(ALICE_FILES);
+
+		assertEquals(ALICE_FILES, files.keySet());
+		for (FileType fileType : ALICE_FILES) {
+			assertArrayEquals(beIDCard.readFile(fileType), files.get(fileType));
+		}
+	}
+
+	@Test
+	public void testAggregateProgress() throws Exception {
+		final List<int[]> progress = new ArrayList<>();
+		beIDCard.addCardListener(new BeIDCardAdapter() {
+			@Override
+			public void notifyReadProgress(FileType fileType, int offset, int estimatedMaxSize) {
+				progress.add(new int[]{offset, estimatedMaxSize});
+			}
+		});
+
+		Map<FileType, byte[]> files = beIDCard.readAll(ALICE_FILES);
+
+		int total = 0;
+		for (byte[] data : files.values()) {
+			total += data.length;
+		}
+
+		int previousOffset = 0;
+		for (int[] offsetAndMax : progress) {
+			assertTrue(offsetAndMax[0] >= previousOffset);
+			assertTrue(offsetAndMax[0] <= offsetAndMax[1]);
+			previousOffset = offsetAndMax[0];
+		}
+		int[] last = progress.get(progress.size() - 1);
+		assertEquals(total, last[0]);
+		assertEquals(total, last[1]);
+	}
+
+	@Test
+	public void testCachedFilesNotRead() throws Exception {
+		FileCache fileCache = new FileCache();
+		beIDCard.setFileCache(fileCache);
+		beIDCard.readFile(FileType.Photo);
+
+		simulatedCard.resetTransmitCount();
+		Map<FileType, byte[]> files = beIDCard.readAll(EnumSet.of(FileType.Photo, FileType.Address));
+
+		assertEquals(2, files.size());
+		assertEquals(1, fileCache.getHitCount());
+		// SELECT FILE and one READ BINARY for the address only
+		assertEquals(2, simulatedCard.getTransmitCount());
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.client.tests.integration;
+
+import be.bosa.commons.eid.client.BeIDCard;
+import be.bosa.commons.eid.client.FileType;
+import be.bosa.commons.eid.client.SharingViolationStrategy;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedBeIDCard;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedCardTerminal;
+import com.sun.management.ThreadMXBean;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares short (0xff) and extended-length READ BINARY against a simulated
+ * card that takes {@link #TRANSMIT_DELAY} ms per APDU, roughly what a PC/SC
+ * round-trip costs, and prints the APDU count and wall time per file. Also
+ * prints the bytes allocated per READ BINARY of a file, into a new array and
+ * into a reused ByteBuffer.
+ */
+public class ReadBinaryBenchmark {
+
+	private static final long TRANSMIT_DELAY = 5;
+	private static final int ROUNDS = 5;
+	private static final int ALLOCATION_ROUNDS = 1000;
+
+	// CARD DATA of a v1.8 applet
+	private static final byte[] CARD_DATA_V18 = new byte[]{
+			0x53, 0x4c, 0x49, 0x4e, 0x33, 0x66, 0x00, 0x13, (byte) 0x93, 0x0d, 0x20, 0x61, (byte) 0xc0, 0x18, 0x06, 0x3f,
+			(byte) 0xd0, 0x00, 0x48, 0x01, 0x01, 0x18, 0x00, 0x02, 0x00, 0x01, 0x01, 0x0f
+	};
+
+	@Test
+	public void benchmarkReadFile() throws Exception {
+		System.out.println(String.format("%-28s %8s %8s %10s %10s", "file", "APDUs", "APDUs", "ms", "ms"));
+		System.out.println(String.format("%-28s %8s %8s %10s %10s", "", "short", "extended", "short", "extended"));
+
+		for (FileType fileType : FileType.values()) {
+			if (fileType == FileType.NonRepudiationCertificate) {
+				continue; // not in the Alice profile
+			}
+
+			Result shortResult = readFile(fileType, false, true);
+			Result extendedResult = readFile(fileType, true, true);
+			assertArrayEquals(shortResult.data, extendedResult.data);
+			assertTrue(extendedResult.transmitCount <= shortResult.transmitCount);
+
+			System.out.println(String.format("%-28s %8d %8d %10.1f %10.1f", fileType.name(),
+					shortResult.transmitCount, extendedResult.transmitCount,
+					shortResult.nanos / 1e6, extendedResult.nanos / 1e6));
+		}
+	}
+
+	@Test
+	public void testReaderWithoutExtendedLength() throws Exception {
+		Result shortResult = readFile(FileType.Photo, false, true);
+		Result refusedResult = readFile(FileType.Photo, true, false);
+
+		assertArrayEquals(shortResult.data, refusedResult.data);
+		// GET CARD DATA, the refused extended read, then the short reads
+		assertEquals(shortResult.transmitCount + 1, refusedResult.transmitCount);
+	}
+
+	@Test
+	public void testEndOfFileWarning() throws Exception {
+		Result extendedResult = readFile(FileType.Photo, true, true);
+
+		SimulatedBeIDCard simulatedCard = new SimulatedBeIDCard("Alice");
+		simulatedCard.setCardData(CARD_DATA_V18.clone());
+		simulatedCard.setEndOfFileWarning(true);
+		BeIDCard beIDCard = new BeIDCard(new SimulatedCardTerminal("Fedix SCR 0"), simulatedCard);
+		beIDCard.setSharingViolationStrategy(SharingViolationStrategy.noDelay());
+
+		// 6282 ends the file, it is no reason to fall back to short reads
+		assertArrayEquals(extendedResult.data, beIDCard.readFile(FileType.Photo));
+		assertEquals(extendedResult.transmitCount, simulatedCard.getTransmitCount());
+	}
+
+	@Test
+	public void benchmarkAllocation() throws Exception {
+		ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+
+		SimulatedBeIDCard simulatedCard = new SimulatedBeIDCard("Alice");
+		BeIDCard beIDCard = new BeIDCard(new SimulatedCardTerminal("Fedix SCR 0"), simulatedCard);
+		beIDCard.setSharingViolationStrategy(SharingViolationStrategy.noDelay());
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+		// allocation includes the APDUs of the simulated card and of javax.smartcardio
+		System.out.println(String.format("%-28s %8s %10s %10s", "file", "size", "B/read", "B/read"));
+		System.out.println(String.format("%-28s %8s %10s %10s", "", "", "byte[]", "ByteBuffer"));
+		for (FileType fileType : FileType.values()) {
+			if (fileType == FileType.NonRepudiationCertificate) {
+				continue; // not in the Alice profile
+			}
+
+			byte[] data = null;
+			long arrayAllocated = 0;
+			long bufferAllocated = 0;
+			for (int round = -ALLOCATION_ROUNDS; round < ALLOCATION_ROUNDS; round++) {
+				beIDCard.selectFile(fileType.getFileId());
+				long start = getAllocatedBytes(threadMXBean);
+				data = beIDCard.readBinary(fileType, fileType.getEstimatedMaxSize());
+				long allocated = getAllocatedBytes(threadMXBean) - start;
+
+				beIDCard.selectFile(fileType.getFileId());
+				buffer.clear();
+				start = getAllocatedBytes(threadMXBean);
+				int length = beIDCard.readBinary(fileType, buffer);
+				if (round >= 0) {
+					// the first half is warm-up
+					arrayAllocated += allocated;
+					bufferAllocated += getAllocatedBytes(threadMXBean) - start;
+				}
+				assertEquals(data.length, length);
+			}
+			assertArrayEquals(data, Arrays.copyOf(buffer.array(), buffer.position()));
+
+			System.out.println(String.format("%-28s %8d %10d %10d", fileType.name(), data.length,
+					arrayAllocated / ALLOCATION_ROUNDS, bufferAllocated / ALLOCATION_ROUNDS));
+		}
+	}
+
+	private static long getAllocatedBytes(ThreadMXBean threadMXBean) {
+		return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private Result readFile(FileType fileType, boolean extendedLengthCard, boolean extendedLengthReader) throws Exception {
+		Result result = new Result();
+		for (int round = 0; round < ROUNDS; round++) {
+			SimulatedBeIDCard simulatedCard = new SimulatedBeIDCard("Alice");
+			simulatedCard.setTransmitDelay(TRANSMIT_DELAY);
+			simulatedCard.setExtendedLengthSupported(extendedLengthReader);
+			if (extendedLengthCard) {
+				simulatedCard.setCardData(CARD_DATA_V18.clone());
+			}
+			BeIDCard beIDCard = new BeIDCard(new SimulatedCardTerminal("Fedix SCR 0"), simulatedCard);
+
+			long start = System.nanoTime();
+			result.data = beIDCard.readFile(fileType);
+			result.nanos += System.nanoTime() - start;
+			result.transmitCount = simulatedCard.getTransmitCount();
+		}
+
+		result.nanos /= ROUNDS;
+		return result;
+	}
+
+	private static class Result {
+		private byte[] data;
+		private int transmitCount;
+		private long nanos;
+	}
+}
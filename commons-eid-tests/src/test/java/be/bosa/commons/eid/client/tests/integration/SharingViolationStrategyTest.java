@@ -0,0 +1,104 @@
+/*
+ * Commons eID Project.
+ * Copyright (C) 2014 - 2018 BOSA.
+ *
+ * This is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License version 3.0 as published by
+ * the Free Software Foundation.
+ *
+ * This software is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this software; if not, see https://www.gnu.org/licenses/.
+ */
+
+package be.bosa.commons.eid.client.tests.integration;
+
+import be.bosa.commons.eid.client.BeIDCard;
+import be.bosa.commons.eid.client.FileType;
+import be.bosa.commons.eid.client.SharingViolationStrategy;
+import be.bosa.commons.eid.client.exception.BeIDException;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedBeIDCard;
+import be.bosa.commons.eid.client.tests.integration.simulation.SimulatedCardTerminal;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SharingViolationStrategyTest {
+
+	private SimulatedBeIDCard simulatedCard;
+	private BeIDCard beIDCard;
+
+	@Before
+	public void setUp() {
+		simulatedCard = new SimulatedBeIDCard("Alice");
+		beIDCard = new BeIDCard(new SimulatedCardTerminal("Fedix SCR 0"), simulatedCard, new TestLogger());
+		beIDCard.setExtendedLengthEnabled(false);
+	}
+
+	@Test
+	public void testFixedDelay() throws Exception {
+		SharingViolationStrategy strategy = SharingViolationStrategy.fixedDelay();
+		beIDCard.setSharingViolationStrategy(strategy);
+
+		beIDCard.readFile(FileType.Identity);
+		beIDCard.readFile(FileType.Address);
+		assertEquals(40, strategy.getAppliedDelay());
+	}
+
+	@Test
+	public void testNoDelayDoesNotRetry() throws Exception {
+		SharingViolationStrategy strategy = SharingViolationStrategy.noDelay();
+		beIDCard.setSharingViolationStrategy(strategy);
+		simulatedCard.setSharingViolations(1);
+
+		try {
+			beIDCard.readFile(FileType.Identity);
+			fail();
+		} catch (BeIDException e) {
+			assertEquals(1, strategy.getSharingViolationCount());
+			assertEquals(0, strategy.getAppliedDelay());
+		}
+	}
+
+	@Test
+	public void testAdaptiveRemembersReader() throws Exception {
+		SharingViolationStrategy strategy = SharingViolationStrategy.adaptive();
+		beIDCard.setSharingViolationStrategy(strategy);
+
+		beIDCard.readFile(FileType.Identity);
+		assertEquals(0, strategy.getAppliedDelay());
+
+		// retries after 5, 10 and 20 ms, then waits 20 ms after SELECT FILE
+		simulatedCard.setSharingViolations(3);
+		beIDCard.readFile(FileType.Identity);
+		assertEquals(3, strategy.getSharingViolationCount());
+		assertEquals(55, strategy.getAppliedDelay());
+
+		// a second card in the same reader
+		BeIDCard otherCard = new BeIDCard(new SimulatedCardTerminal("Fedix SCR 0"), new SimulatedBeIDCard("Alice"), new TestLogger());
+		otherCard.setSharingViolationStrategy(strategy);
+		otherCard.readFile(FileType.Address);
+		assertEquals(75, strategy.getAppliedDelay());
+	}
+
+	@Test
+	public void testAdaptiveGivesUp() throws Exception {
+		SharingViolationStrategy strategy = SharingViolationStrategy.adaptive();
+		beIDCard.setSharingViolationStrategy(strategy);
+		simulatedCard.setSharingViolations(10);
+
+		try {
+			beIDCard.readFile(FileType.Identity);
+			fail();
+		} catch (BeIDException e) {
+			assertEquals(6, strategy.getSharingViolationCount());
+			assertEquals(5 + 10 + 20 + 40 + 80, strategy.getAppliedDelay());
+		}
+	}
+}
@@ -21,11 +21,18 @@ import be.bosa.commons.eid.client.FileType;
 import org.apache.commons.io.IOUtils;
 
 import javax.smartcardio.ATR;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 
 public class SimulatedBeIDCard extends SimulatedCard {
 
+	// CARD DATA of a v1.1 applet, serial number 534c494e33660013930d2061c018063f
+	private static final byte[] CARD_DATA = new byte[]{
+			0x53, 0x4c, 0x49, 0x4e, 0x33, 0x66, 0x00, 0x13, (byte) 0x93, 0x0d, 0x20, 0x61, (byte) 0xc0, 0x18, 0x06, 0x3f,
+			(byte) 0xd0, 0x00, 0x48, 0x01, 0x01, 0x11, 0x00, 0x02, 0x00, 0x01, 0x01, 0x0f
+	};
+
 	public SimulatedBeIDCard(String profile) {
 		super(null);
 
@@ -39,6 +46,7 @@ public class SimulatedBeIDCard extends SimulatedCard {
 		}
 
 		setFilesFromProfile(profile);
+		setCardData(CARD_DATA.clone());
 	}
 
 	public SimulatedBeIDCard(ATR atr) {
@@ -59,6 +67,9 @@ public class SimulatedBeIDCard extends SimulatedCard {
 	public void setFileFromProfile(FileType type,
 								   String profile) throws IOException {
 		InputStream idInputStream = SimulatedBeIDCard.class.getResourceAsStream("/" + profile + "_" + type + ".tlv");
+		if (idInputStream == null) {
+			throw new FileNotFoundException(profile + "_" + type + ".tlv");
+		}
 		setFile(type.getFileId(), IOUtils.toByteArray(idInputStream));
 	}
 }
@@ -32,34 +32,84 @@ public class SimulatedCard extends Card {
 	protected static final ResponseAPDU COMMAND_NOT_AVAILABLE = new ResponseAPDU(new byte[]{0x6d, 0x00});
 	protected static final ResponseAPDU FILE_NOT_FOUND = new ResponseAPDU(new byte[]{0x6a, (byte) 0x82});
 	protected static final ResponseAPDU OFFSET_OUTSIDE_EF = new ResponseAPDU(new byte[]{0x6b, (byte) 0x00});
+	protected static final ResponseAPDU WRONG_LENGTH = new ResponseAPDU(new byte[]{0x67, (byte) 0x00});
 
 	protected ATR atr;
 	protected String protocol;
 	protected final Map<BigInteger, byte[]> files;
 	protected byte[] selectedFile;
+	protected byte[] cardData;
+	protected boolean extendedLengthSupported;
+	protected boolean endOfFileWarning;
+	protected int transmitCount;
+	protected long transmitDelay;
+	protected int sharingViolations;
+	protected int exclusiveCount;
 
 	public SimulatedCard(ATR atr) {
 		this.atr = atr;
 		this.files = new HashMap<>();
+		this.extendedLengthSupported = true;
 	}
 
 	public void setATR(ATR atr) {
 		this.atr = atr;
 	}
 
+	public void setCardData(byte[] cardData) {
+		this.cardData = cardData;
+	}
+
+	public void setProtocol(String protocol) {
+		this.protocol = protocol;
+	}
+
+	public void setExtendedLengthSupported(boolean extendedLengthSupported) {
+		this.extendedLengthSupported = extendedLengthSupported;
+	}
+
+	/**
+	 * Answer a READ BINARY that reaches the end of the file before Le bytes
+	 * with 6282 instead of 9000, as some cards do.
+	 */
+	public void setEndOfFileWarning(boolean endOfFileWarning) {
+		this.endOfFileWarning = endOfFileWarning;
+	}
+
+	public void setTransmitDelay(long transmitDelay) {
+		this.transmitDelay = transmitDelay;
+	}
+
+	public void setSharingViolations(int sharingViolations) {
+		this.sharingViolations = sharingViolations;
+	}
+
+	public int getTransmitCount() {
+		return this.transmitCount;
+	}
+
+	public void resetTransmitCount() {
+		this.transmitCount = 0;
+	}
+
+	public synchronized int getExclusiveCount() {
+		return this.exclusiveCount;
+	}
+
 	@Override
-	public void beginExclusive() {
-		throw new RuntimeException("Not Implemented In SimulatedCard");
+	public synchronized void beginExclusive() {
+		// only one card channel is ever simulated, just count the transactions
+		this.exclusiveCount++;
 	}
 
 	@Override
 	public void disconnect(boolean arg0) {
-		throw new RuntimeException("Not Implemented In SimulatedCard");
+		// nothing to release
 	}
 
 	@Override
 	public void endExclusive() {
-		throw new RuntimeException("Not Implemented In SimulatedCard");
+		// only one card channel is ever simulated
 	}
 
 	@Override
@@ -83,11 +133,29 @@ public class SimulatedCard extends Card {
 	}
 
 	@Override
-	public byte[] transmitControlCommand(int arg0, byte[] arg1) {
+	public byte[] transmitControlCommand(int arg0, byte[] arg1) throws CardException {
 		throw new RuntimeException("Not Implemented In SimulatedCard");
 	}
 
 	protected ResponseAPDU transmit(CommandAPDU apdu) throws CardException {
+		this.transmitCount++;
+		if (this.transmitDelay > 0) {
+			try {
+				Thread.sleep(this.transmitDelay);
+			} catch (InterruptedException e) {
+				throw new CardException(e);
+			}
+		}
+
+		if (this.sharingViolations > 0) {
+			this.sharingViolations--;
+			throw new CardException("transmit() failed", new Exception("SCARD_E_SHARING_VIOLATION"));
+		}
+
+		if (!this.extendedLengthSupported && (apdu.getNe() > 256 || apdu.getNc() > 255)) {
+			return WRONG_LENGTH;
+		}
+
 		// "SELECT FILE"
 		if (apdu.getCLA() == 0x00 && apdu.getINS() == 0xA4 && apdu.getP1() == 0x08 && apdu.getP2() == 0x0C) {
 			return selectFile(apdu.getData());
@@ -97,6 +165,13 @@ public class SimulatedCard extends Card {
 			int offset = (apdu.getP1() << 8) + apdu.getP2();
 			return readBinary(offset, apdu.getNe());
 		}
+		// "GET CARD DATA"
+		else if (apdu.getCLA() == 0x80 && apdu.getINS() == 0xE4 && this.cardData != null) {
+			byte[] response = new byte[this.cardData.length + 2];
+			System.arraycopy(this.cardData, 0, response, 0, this.cardData.length);
+			response[this.cardData.length] = (byte) 0x90;
+			return new ResponseAPDU(response);
+		}
 		return COMMAND_NOT_AVAILABLE;
 	}
 
@@ -114,9 +189,14 @@ public class SimulatedCard extends Card {
 		byte[] response = new byte[lengthToReturn + 2]; // reserve number of bytes + 2 for trailer
 		System.arraycopy(this.selectedFile, offset, response, 0, lengthToReturn);
 
-		// add the trailer with OK response
-		response[lengthToReturn] = (byte) 0x90;
-		response[lengthToReturn + 1] = 0x00;
+		// add the trailer with OK response, or end of file reached before Le bytes
+		if (this.endOfFileWarning && lengthToReturn < length) {
+			response[lengthToReturn] = (byte) 0x62;
+			response[lengthToReturn + 1] = (byte) 0x82;
+		} else {
+			response[lengthToReturn] = (byte) 0x90;
+			response[lengthToReturn + 1] = 0x00;
+		}
 
 		// return as an BeIDCommandAPDU..
 		return new ResponseAPDU(response);
@@ -20,16 +20,19 @@ package be.bosa.commons.eid.client.tests.integration.simulation;
 import javax.smartcardio.Card;
 import javax.smartcardio.CardException;
 import javax.smartcardio.CardTerminal;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SimulatedCardTerminal extends CardTerminal {
 
 	private final String name;
-	private SimulatedCard card;
-	private SimulatedCardTerminals terminals;
+	private volatile SimulatedCard card;
+	private volatile SimulatedCardTerminals terminals;
+	private final AtomicInteger cardPresentQueries;
 
 	public SimulatedCardTerminal(String name) {
 		super();
 		this.name = name;
+		this.cardPresentQueries = new AtomicInteger();
 	}
 
 	public synchronized void insertCard(SimulatedCard card) {
@@ -69,9 +72,18 @@ public class SimulatedCardTerminal extends CardTerminal {
 
 	@Override
 	public boolean isCardPresent() {
+		this.cardPresentQueries.incrementAndGet();
 		return this.card != null;
 	}
 
+	SimulatedCard getCard() {
+		return this.card;
+	}
+
+	public int getCardPresentQueries() {
+		return this.cardPresentQueries.get();
+	}
+
 	@Override
 	public synchronized boolean waitForCardAbsent(long timeout) {
 		return waitForCardState(false, timeout);
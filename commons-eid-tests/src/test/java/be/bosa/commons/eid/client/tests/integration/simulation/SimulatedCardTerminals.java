@@ -22,15 +22,23 @@ import javax.smartcardio.CardTerminal;
 import javax.smartcardio.CardTerminals;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 public class SimulatedCardTerminals extends CardTerminals {
 	private final Set<SimulatedCardTerminal> terminals;
+	private Map<CardTerminal, SimulatedCard> terminalsWithCards;
+	private Set<CardTerminal> insertions;
+	private Set<CardTerminal> removals;
 
 	public SimulatedCardTerminals() {
 		this.terminals = new HashSet<>();
+		this.insertions = new HashSet<>();
+		this.removals = new HashSet<>();
 	}
 
 	public synchronized void attachCardTerminal(SimulatedCardTerminal terminal) {
@@ -75,18 +83,69 @@ public class SimulatedCardTerminals extends CardTerminals {
 				return Collections.unmodifiableList(absentList);
 			}
 
+			case CARD_INSERTION:
+				return Collections.unmodifiableList(new ArrayList<>(this.insertions));
+
+			case CARD_REMOVAL:
+				return Collections.unmodifiableList(new ArrayList<>(this.removals));
+
 			default:
-				throw new CardException("list with CARD_INSERTION or CARD_REMOVAL not supported in SimulatedCardTerminals");
+				throw new CardException("unknown state " + state);
 		}
 	}
 
+	/**
+	 * Like PCSC, waits for cards being inserted or removed relative to the
+	 * state at the previous call, which CARD_INSERTION and CARD_REMOVAL then
+	 * report. A card swapped for another in between is reported as both.
+	 * Attaching or detaching an empty terminal is not a change.
+	 */
 	@Override
 	public synchronized boolean waitForChange(long timeout) {
+		if (this.terminalsWithCards == null) {
+			this.terminalsWithCards = currentTerminalsWithCards();
+		}
+
+		long deadline = timeout == 0 ? Long.MAX_VALUE : System.currentTimeMillis() + timeout;
+		Map<CardTerminal, SimulatedCard> current = currentTerminalsWithCards();
 		try {
-			wait(timeout);
+			while (current.equals(this.terminalsWithCards)) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					break;
+				}
+				wait(remaining);
+				current = currentTerminalsWithCards();
+			}
 		} catch (InterruptedException iex) {
 			return false;
 		}
-		return true;
+
+		this.insertions = changedTerminals(current, this.terminalsWithCards);
+		this.removals = changedTerminals(this.terminalsWithCards, current);
+		this.terminalsWithCards = current;
+		return !this.insertions.isEmpty() || !this.removals.isEmpty();
+	}
+
+	// the terminals holding a card in the one state that they don't hold in the other
+	private static Set<CardTerminal> changedTerminals(Map<CardTerminal, SimulatedCard> state, Map<CardTerminal, SimulatedCard> otherState) {
+		Set<CardTerminal> changedTerminals = new HashSet<>();
+		for (Map.Entry<CardTerminal, SimulatedCard> entry : state.entrySet()) {
+			if (!Objects.equals(entry.getValue(), otherState.get(entry.getKey()))) {
+				changedTerminals.add(entry.getKey());
+			}
+		}
+		return changedTerminals;
+	}
+
+	private Map<CardTerminal, SimulatedCard> currentTerminalsWithCards() {
+		Map<CardTerminal, SimulatedCard> terminalsWithCards = new HashMap<>();
+		for (SimulatedCardTerminal terminal : this.terminals) {
+			SimulatedCard card = terminal.getCard();
+			if (card != null) {
+				terminalsWithCards.put(terminal, card);
+			}
+		}
+		return terminalsWithCards;
 	}
 }
\ No newline at end of file